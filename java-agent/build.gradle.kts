@@ -214,6 +214,10 @@ kotlin {
             }
         }
         runtimeJar.get().dependsOn(jvmMainCompilation.compileTaskProvider.get())
+        withType<Test> {
+            // benchmarks are skipped unless they are requested by -Ddrill.benchmarks=true
+            System.getProperty("drill.benchmarks")?.let { systemProperty("drill.benchmarks", it) }
+        }
     }
 }
 
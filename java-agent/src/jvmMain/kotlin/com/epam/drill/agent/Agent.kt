@@ -21,7 +21,9 @@ import com.epam.drill.agent.configuration.CapabilityParameterDefinitions
 import com.epam.drill.agent.configuration.Configuration
 import com.epam.drill.agent.configuration.DefaultParameterDefinitions
 import com.epam.drill.agent.configuration.ParameterDefinitions
+import com.epam.drill.agent.common.classloading.ClassRetransformation
 import com.epam.drill.agent.instrument.CompositeTransformer
+import com.epam.drill.agent.instrument.LoadedClassRetransformer
 import com.epam.drill.agent.logging.LoggingConfiguration
 import com.epam.drill.agent.module.JvmModuleLoader
 import com.epam.drill.agent.test.session.SessionController
@@ -56,6 +58,10 @@ fun premain(agentArgs: String?, inst: Instrumentation) {
         updateJvmLoggingConfiguration()
         validateConfiguration()
         inst.addTransformer(DrillClassFileTransformer, true)
+        if (inst.isRetransformClassesSupported) {
+            val retransformer = LoadedClassRetransformer(inst)
+            ClassRetransformation.register(retransformer::retransform, retransformer::loadedClassNames)
+        }
         if (isClassScanningEnabled() || isCoverageCollectionEnabled()) {
             JvmModuleMessageSender.sendAgentMetadata()
             JvmModuleMessageSender.startHeartbeatReporting()
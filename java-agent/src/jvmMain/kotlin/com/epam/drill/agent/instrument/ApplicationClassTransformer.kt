@@ -15,7 +15,7 @@
  */
 package com.epam.drill.agent.instrument
 
-import com.epam.drill.agent.common.classloading.ClassSource
+import com.epam.drill.agent.common.classloading.PackagePrefixMatcher
 import com.epam.drill.agent.common.module.Instrumenter
 import com.epam.drill.agent.configuration.Configuration
 import com.epam.drill.agent.module.JvmModuleStorage
@@ -31,12 +31,16 @@ actual object ApplicationClassTransformer :
 
     override val logger: KLogger = KotlinLogging.logger {}
 
+    private val packagePrefixMatcher by lazy { PackagePrefixMatcher(Configuration.agentMetadata.packagesPrefixes) }
+
+    override val permittedClassPrefixes: Set<String>
+        get() = packagePrefixMatcher.includedPrefixes
+
     override fun permit(
         className: String,
         superName: String?,
         interfaces: Array<String?>
-    ): Boolean = ClassSource(className, superName)
-        .prefixMatches(Configuration.agentMetadata.packagesPrefixes)
+    ): Boolean = packagePrefixMatcher.matches(className, superName)
 
     override fun transform(
         className: String,
@@ -15,19 +15,23 @@
  */
 package com.epam.drill.agent.instrument
 
+import java.util.BitSet
+import com.epam.drill.agent.common.classloading.PrefixTrie
 import mu.KotlinLogging
 import org.objectweb.asm.ClassReader
 
 actual object CompositeTransformer : Transformer {
     private val logger = KotlinLogging.logger {}
     private val transformers = TransformerRegistrar
+    private val dispatchIndex by lazy { TransformerDispatchIndex(transformers.enabledTransformers) }
+    private val classNameFilter by lazy { ClassNameFilter.of(transformers.enabledTransformers) }
 
     override fun precheck(
         className: String,
         loader: Any?,
         protectionDomain: Any?
     ): Boolean {
-        return transformers.enabledTransformers.any { it.precheck(className, loader, protectionDomain) }
+        return classNameFilter.precheck(className, loader, protectionDomain)
     }
 
     override fun transform(
@@ -39,7 +43,9 @@ actual object CompositeTransformer : Transformer {
         val reader = runCatching { ClassReader(classFileBuffer) }
             .onFailure { logger.warn(it) { "Can't read class: $classFileBuffer" } }
             .getOrNull() ?: return null
-        val enabledTransformers = runCatching { transformers.enabledTransformers }.onFailure {
+        val enabledTransformers = runCatching {
+            dispatchIndex.candidates(className, reader.superName, reader.interfaces)
+        }.onFailure {
             logger.warn { "Can't get enabled transformers for class: $className: " + it.message }
         }.getOrNull() ?: return null
         return enabledTransformers.fold(classFileBuffer) { bytes, transformer ->
@@ -60,4 +66,91 @@ actual object CompositeTransformer : Transformer {
             } ?: bytes
         }.takeIf { it !== classFileBuffer }
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Index of transformers by names of classes and super types they may permit.
+ *
+ * Transformers declaring [TransformerObject.permittedClassNames] or [TransformerObject.permittedSuperTypes]
+ * are looked up by hash, other transformers are candidates for every class.
+ * Candidates are returned in the order of the given transformers, as they are applied one after another.
+ */
+internal class TransformerDispatchIndex(private val transformers: List<Transformer>) {
+    private val byClassName = HashMap<String, BitSet>()
+    private val bySuperType = HashMap<String, BitSet>()
+    private val unindexed = BitSet(transformers.size)
+
+    init {
+        transformers.forEachIndexed { position, transformer ->
+            val classNames = (transformer as? TransformerObject)?.permittedClassNames
+            val superTypes = (transformer as? TransformerObject)?.permittedSuperTypes
+            if (classNames == null && superTypes == null) unindexed.set(position)
+            classNames?.forEach { byClassName.getOrPut(it) { BitSet() }.set(position) }
+            superTypes?.forEach { bySuperType.getOrPut(it) { BitSet() }.set(position) }
+        }
+    }
+
+    fun candidates(className: String, superName: String?, interfaces: Array<String?>): List<Transformer> {
+        val positions = unindexed.clone() as BitSet
+        byClassName[className]?.let(positions::or)
+        superName?.let(bySuperType::get)?.let(positions::or)
+        interfaces.forEach { name -> name?.let(bySuperType::get)?.let(positions::or) }
+        return ArrayList<Transformer>(positions.cardinality()).also { candidates ->
+            var position = positions.nextSetBit(0)
+            while (position >= 0) {
+                candidates.add(transformers[position])
+                position = positions.nextSetBit(position + 1)
+            }
+        }
+    }
+}
+
+/**
+ * Filter of classes which may be permitted by transformers, checked by the class name only.
+ *
+ * Transformers declaring [TransformerObject.permittedClassNames] or [TransformerObject.permittedClassPrefixes]
+ * are prechecked only for classes matching their declarations.
+ * Transformers permitting classes by [TransformerObject.permittedSuperTypes] or without declarations
+ * may permit any class name, so they are always prechecked.
+ *
+ * Note that the default [Transformer.precheck] passes any class with a loader and a protection domain,
+ * so while such transformers are enabled (e.g. TTL and HTTP client ones in the default configuration),
+ * only classes of the bootstrap loader are rejected by name, and application classes are read anyway.
+ * See the benchmark in `ClassNameFilterTest`.
+ */
+internal class ClassNameFilter(
+    private val filteredTransformers: List<Transformer>,
+    private val unfilteredTransformers: List<Transformer>,
+    private val classNames: Set<String>,
+    classPrefixes: Set<String>
+) {
+    private val classPrefixes = PrefixTrie(classPrefixes)
+
+    fun mayPermit(className: String): Boolean = className in classNames || classPrefixes.matches(className)
+
+    fun precheck(className: String, loader: Any?, protectionDomain: Any?): Boolean =
+        mayPermit(className) && filteredTransformers.any { it.precheck(className, loader, protectionDomain) } ||
+                unfilteredTransformers.any { it.precheck(className, loader, protectionDomain) }
+
+    companion object {
+        fun of(transformers: List<Transformer>): ClassNameFilter {
+            val filteredTransformers = mutableListOf<Transformer>()
+            val unfilteredTransformers = mutableListOf<Transformer>()
+            val classNames = HashSet<String>()
+            val classPrefixes = HashSet<String>()
+            transformers.forEach { transformer ->
+                val names = (transformer as? TransformerObject)?.permittedClassNames
+                val prefixes = (transformer as? TransformerObject)?.permittedClassPrefixes
+                val superTypes = (transformer as? TransformerObject)?.permittedSuperTypes
+                if (superTypes != null || names == null && prefixes == null) {
+                    unfilteredTransformers.add(transformer)
+                    return@forEach
+                }
+                filteredTransformers.add(transformer)
+                names?.let(classNames::addAll)
+                prefixes?.let(classPrefixes::addAll)
+            }
+            return ClassNameFilter(filteredTransformers, unfilteredTransformers, classNames, classPrefixes)
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.lang.instrument.Instrumentation
+import mu.KotlinLogging
+
+/**
+ * Retransforms loaded classes by names, so they pass through [DrillClassFileTransformer] once again.
+ *
+ * Classes are retransformed in batches. If a batch fails, its classes are retransformed one by one,
+ * so a single class that can't be retransformed doesn't prevent others from being retransformed.
+ */
+class LoadedClassRetransformer(private val instrumentation: Instrumentation) {
+    private val logger = KotlinLogging.logger {}
+
+    fun retransform(classNames: Set<String>, batchSize: Int): Int {
+        val classes = instrumentation.allLoadedClasses.filter {
+            it.name.replace('.', '/') in classNames && instrumentation.isModifiableClass(it)
+        }
+        logger.info { "Retransforming ${classes.size} loaded classes of ${classNames.size} requested" }
+        return classes.chunked(batchSize).sumOf { batch ->
+            runCatching {
+                instrumentation.retransformClasses(*batch.toTypedArray())
+                batch.size
+            }.getOrElse { e ->
+                logger.warn { "Can't retransform a batch of ${batch.size} classes: ${e.message}, retrying one by one" }
+                batch.count(::retransformClass)
+            }
+        }
+    }
+
+    fun loadedClassNames(): Set<String> = instrumentation.allLoadedClasses
+        .filter { !it.isArray && instrumentation.isModifiableClass(it) }
+        .mapTo(HashSet()) { it.name.replace('.', '/') }
+
+    private fun retransformClass(clazz: Class<*>): Boolean = runCatching {
+        instrumentation.retransformClasses(clazz)
+    }.onFailure {
+        logger.warn(it) { "Can't retransform class: ${clazz.name}" }
+    }.isSuccess
+}
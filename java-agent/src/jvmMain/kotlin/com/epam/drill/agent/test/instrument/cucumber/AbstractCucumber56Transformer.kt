@@ -28,6 +28,8 @@ abstract class AbstractCucumber56Transformer() : AbstractCucumberTransformer() {
     /**
      * From cucumber 5 TestStep class location doesn't change
      */
+    override val permittedClassNames = setOf("io/cucumber/core/runner/TestStep")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         return className == "io/cucumber/core/runner/TestStep"
     }
@@ -27,6 +27,8 @@ actual object JMeterTransformer : Transformer, AbstractTestTransformerObject() {
 
     override fun enabled() = super<AbstractTestTransformerObject>.enabled() && agentConfiguration.parameters[INSTRUMENTATION_JMETER_ENABLED]
 
+    override val permittedClassNames = setOf("org/apache/jmeter/protocol/http/sampler/HTTPHC4Impl")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         return className == "org/apache/jmeter/protocol/http/sampler/HTTPHC4Impl"
     }
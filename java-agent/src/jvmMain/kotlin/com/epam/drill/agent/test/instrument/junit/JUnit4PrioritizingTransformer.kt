@@ -32,6 +32,8 @@ actual object JUnit4PrioritizingTransformer : Transformer, AbstractJUnitTransfor
 
     override fun enabled(): Boolean = super<AbstractJUnitTransformer>.enabled() && agentConfiguration.parameters[ParameterDefinitions.RECOMMENDED_TESTS_ENABLED]
 
+    override val permittedClassNames = setOf("org/junit/runners/JUnit4")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         return className == "org/junit/runners/JUnit4"
     }
@@ -32,6 +32,8 @@ actual object JUnitPlatformPrioritizingTransformer : Transformer, AbstractJUnitT
 
     override fun enabled(): Boolean = Configuration.parameters[ParameterDefinitions.RECOMMENDED_TESTS_ENABLED]
 
+    override val permittedClassNames = setOf("org/junit/platform/launcher/core/DefaultLauncher")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         return className == "org/junit/platform/launcher/core/DefaultLauncher"
     }
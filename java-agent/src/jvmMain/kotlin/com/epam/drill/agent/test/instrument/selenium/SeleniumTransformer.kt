@@ -58,6 +58,8 @@ actual object SeleniumTransformer : Transformer, AbstractTestTransformerObject()
 
     override fun enabled() = super<AbstractTestTransformerObject>.enabled() && agentConfiguration.parameters[INSTRUMENTATION_SELENIUM_ENABLED]
 
+    override val permittedClassNames = setOf("org/openqa/selenium/remote/RemoteWebDriver")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         return className == "org/openqa/selenium/remote/RemoteWebDriver"
     }
@@ -35,6 +35,8 @@ abstract class AbstractTestNG67Transformer() : AbstractTestNGTransformer() {
 
     abstract val versionRegex: Regex
 
+    override val permittedClassNames = setOf("org/testng/TestRunner")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         return className == "org/testng/TestRunner"
     }
@@ -28,6 +28,8 @@ abstract class AbstractTestNGPrioritizingTransformer() : AbstractTestNGTransform
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[ParameterDefinitions.RECOMMENDED_TESTS_ENABLED]
 
+    override val permittedSuperTypes = setOf("org/testng/IMethodSelector")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         return interfaces.any { it == "org/testng/IMethodSelector" }
     }
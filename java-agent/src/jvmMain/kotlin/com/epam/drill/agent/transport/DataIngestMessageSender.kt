@@ -23,7 +23,7 @@ import com.epam.drill.agent.configuration.ParameterDefinitions
 import com.epam.drill.agent.transport.http.HttpAgentMessageTransport
 import io.aesy.datasize.ByteUnit
 import io.aesy.datasize.DataSize
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
 import mu.KotlinLogging
 import java.io.File
 import kotlin.takeIf
@@ -34,9 +34,16 @@ private val logger = KotlinLogging.logger {}
 object DataIngestMessageSender : AgentMessageSender {
     private val delegate: AgentMessageSender = messageSender()
 
-    override fun <T> send(destination: AgentMessageDestination, message: T, serializer: KSerializer<T>) =
+    override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) =
         delegate.send(destination, message, serializer)
 
+    override fun <T> send(
+        destination: AgentMessageDestination,
+        message: T,
+        serializer: SerializationStrategy<T>,
+        onDelivery: (delivered: Boolean) -> Unit
+    ) = delegate.send(destination, message, serializer, onDelivery)
+
     override fun shutdown() = shutdownWithTimeout(Long.MAX_VALUE)
 
     fun shutdownWithTimeout(flushTimeoutMs: Long) {
@@ -49,7 +56,9 @@ object DataIngestMessageSender : AgentMessageSender {
 
 fun messageSender(): AgentMessageSender {
     val transport = agentMessageTransport()
-    val serializer = JsonAgentMessageSerializer()
+    val serializer = JsonAgentMessageSerializer(
+        gzipCompression = Configuration.parameters[ParameterDefinitions.USE_GZIP_COMPRESSION]
+    )
     val mapper = HttpAgentMessageDestinationMapper()
     val queue = InMemoryAgentMessageQueue(
         capacity = Configuration.parameters[ParameterDefinitions.MESSAGE_QUEUE_LIMIT].let(::parseBytes),
@@ -79,7 +88,9 @@ fun messageSender(): AgentMessageSender {
 fun directMessageSender(): AgentMessageSender =
     SimpleAgentMessageSender(
         agentMessageTransport(),
-        JsonAgentMessageSerializer(),
+        JsonAgentMessageSerializer(
+            gzipCompression = Configuration.parameters[ParameterDefinitions.USE_GZIP_COMPRESSION]
+        ),
         HttpAgentMessageDestinationMapper()
     )
 
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.io.File
+import java.net.URI
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.util.zip.ZipFile
+import kotlin.streams.asSequence
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+import org.junit.Assume.assumeTrue
+import com.epam.drill.agent.common.classloading.ClassSource
+
+private const val WARMUP_ITERATIONS = 5
+private const val MEASURED_ROUNDS = 5
+
+class ClassNameFilterTest {
+
+    /**
+     * Transformer with the default precheck, which passes classes with a loader and a protection domain
+     */
+    private class DefaultPrecheckTransformer(
+        override val permittedClassNames: Set<String>? = null,
+        override val permittedSuperTypes: Set<String>? = null,
+        override val permittedClassPrefixes: Set<String>? = null,
+    ) : TransformerObject {
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun transform(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            classFileBuffer
+    }
+
+    private class TestTransformer(
+        override val permittedClassNames: Set<String>? = null,
+        override val permittedSuperTypes: Set<String>? = null,
+        override val permittedClassPrefixes: Set<String>? = null,
+    ) : TransformerObject {
+        val prechecked = mutableListOf<String>()
+        override fun precheck(className: String, loader: Any?, protectionDomain: Any?) =
+            prechecked.add(className)
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun transform(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            classFileBuffer
+    }
+
+    private val packagePrefixes = setOf("com/example/app", "org/example/service")
+    private val frameworkClasses = setOf("org/apache/catalina/core/ApplicationFilterChain", "java/util/TimerTask")
+    private val transformers = listOf(
+        TestTransformer(permittedClassPrefixes = packagePrefixes),
+        TestTransformer(permittedClassNames = frameworkClasses),
+    )
+
+    @Test
+    fun `given transformers declaring names and prefixes, filter must permit only declared classes`() {
+        val filter = ClassNameFilter.of(transformers)
+
+        assertTrue(filter.mayPermit("com/example/app/Foo"))
+        assertTrue(filter.mayPermit("org/apache/catalina/core/ApplicationFilterChain"))
+        assertFalse(filter.mayPermit("org/apache/catalina/core/StandardContext"))
+        assertFalse(filter.mayPermit("com/example/Foo"))
+    }
+
+    @Test
+    fun `given transformers permitting super types or without declarations, filter must precheck them for any class`() {
+        val superTypeTransformer = TestTransformer(permittedSuperTypes = setOf("java/lang/Runnable"))
+        val undeclaredTransformer = TestTransformer()
+        val filter = ClassNameFilter.of(transformers + superTypeTransformer + undeclaredTransformer)
+
+        assertTrue(filter.precheck("com/example/Foo", null, null))
+        assertTrue(filter.precheck("com/example/app/Foo", null, null))
+
+        assertEquals(listOf("com/example/app/Foo"), transformers.flatMap(TestTransformer::prechecked))
+        assertEquals(listOf("com/example/Foo"), superTypeTransformer.prechecked)
+    }
+
+    @Test
+    fun `given only transformers declaring names and prefixes, filter must reject other classes before precheck`() {
+        val filter = ClassNameFilter.of(transformers)
+
+        assertFalse(filter.precheck("com/example/Foo", null, null))
+        assertTrue(filter.precheck("java/util/TimerTask", null, null))
+
+        assertEquals(listOf("java/util/TimerTask"), transformers.flatMap(TestTransformer::prechecked))
+    }
+
+    @Test
+    fun `replay class names of the runtime and compare filter with prefix matching`() {
+        val filter = ClassNameFilter.of(transformers)
+        runtimeClassNames().forEach {
+            val prefixMatching = it in frameworkClasses || ClassSource(it).prefixMatches(packagePrefixes)
+            assertEquals(prefixMatching, filter.mayPermit(it), it)
+        }
+    }
+
+    /**
+     * Benchmark of the precheck, it's run only with the `drill.benchmarks` system property set to true.
+     * Class names of the runtime are replayed with and without a class loader,
+     * and the precheck is compared with the baseline one: prechecks of all transformers and prefix matching.
+     */
+    @Test
+    fun `replay class names of the runtime and compare precheck time with prechecks and prefix matching`() {
+        assumeTrue("Benchmarks are run with -Ddrill.benchmarks=true", java.lang.Boolean.getBoolean("drill.benchmarks"))
+        val classNames = runtimeClassNames()
+        val loader = javaClass.classLoader
+        val protectionDomain = javaClass.protectionDomain
+        val nameTransformers = listOf(
+            DefaultPrecheckTransformer(permittedClassPrefixes = packagePrefixes),
+            DefaultPrecheckTransformer(permittedClassNames = frameworkClasses),
+        )
+        // like TTL and HTTP client transformers enabled by default
+        val superTypeTransformers = listOf(
+            DefaultPrecheckTransformer(permittedSuperTypes = setOf("java/util/concurrent/ThreadPoolExecutor")),
+            DefaultPrecheckTransformer(permittedSuperTypes = setOf("java/net/HttpURLConnection")),
+        )
+        val baseline: (List<Transformer>, Any?, Any?) -> (String) -> Boolean = { transformers, loader, domain ->
+            { name ->
+                transformers.any { it.precheck(name, loader, domain) } &&
+                        (name in frameworkClasses || ClassSource(name).prefixMatches(packagePrefixes))
+            }
+        }
+        val filter: (List<Transformer>, Any?, Any?) -> (String) -> Boolean = { transformers, loader, domain ->
+            ClassNameFilter.of(transformers).let { filter -> { name -> filter.precheck(name, loader, domain) } }
+        }
+
+        listOf(
+            "name transformers" to nameTransformers,
+            "name and super type transformers" to nameTransformers + superTypeTransformers,
+        ).forEach { (transformersName, transformers) ->
+            listOf("application" to loader, "bootstrap" to null).forEach { (loaderName, loader) ->
+                val domain = protectionDomain.takeIf { loader != null }
+                val baselineNanos = measureNanosPerClass(classNames, baseline(transformers, loader, domain))
+                val filterNanos = measureNanosPerClass(classNames, filter(transformers, loader, domain))
+                val passed = classNames.count(filter(transformers, loader, domain))
+                println(
+                    "Precheck of ${classNames.size} $loaderName classes with $transformersName: " +
+                            "baseline %.1f ns, filter %.1f ns per class, %d classes passed"
+                                .format(baselineNanos, filterNanos, passed)
+                )
+                if (loader != null) assertTrue(filterNanos < baselineNanos, "$loaderName classes with $transformersName")
+                // transformers permitting super types pass any application class by the default precheck
+                if (transformers === nameTransformers || loader == null) assertTrue(passed < classNames.size)
+                else assertEquals(classNames.size, passed)
+            }
+        }
+    }
+
+    private fun measureNanosPerClass(classNames: List<String>, precheck: (String) -> Boolean): Double {
+        var passed = 0
+        repeat(WARMUP_ITERATIONS) { classNames.forEach { if (precheck(it)) passed++ } }
+        var nanos = Long.MAX_VALUE
+        repeat(MEASURED_ROUNDS) {
+            val start = System.nanoTime()
+            classNames.forEach { if (precheck(it)) passed++ }
+            nanos = minOf(nanos, System.nanoTime() - start)
+        }
+        // the count is used, so that prechecks are not eliminated
+        assertTrue(passed >= 0)
+        return nanos.toDouble() / classNames.size
+    }
+
+    private fun runtimeClassNames(): List<String> {
+        val jdkClasses = runCatching {
+            Files.walk(FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules")).use { paths ->
+                paths.asSequence()
+                    .map { it.toString() }
+                    .filter { it.endsWith(".class") }
+                    .map { it.substringAfter('/', "").substringAfter('/').substringAfter('/').removeSuffix(".class") }
+                    .toList()
+            }
+        }.getOrDefault(emptyList())
+        val classPathClasses = System.getProperty("java.class.path").split(File.pathSeparator)
+            .filter { it.endsWith(".jar") && File(it).isFile }
+            .flatMap { jar ->
+                ZipFile(jar).use { zip ->
+                    zip.entries().asSequence()
+                        .map { it.name }
+                        .filter { it.endsWith(".class") }
+                        .map { it.removeSuffix(".class") }
+                        .toList()
+                }
+            }
+        return jdkClasses + classPathClasses + frameworkClasses + "com/example/app/Foo"
+    }
+}
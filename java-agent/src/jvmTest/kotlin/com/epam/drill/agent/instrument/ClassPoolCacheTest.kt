@@ -0,0 +1,85 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.net.URLClassLoader
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNotSame
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+
+class ClassPoolCacheTest {
+
+    private val classPools = ClassPoolCache(maxCachedClasses = 2)
+
+    @Test
+    fun `given the same class loader, get must return the same pool`() {
+        val loader = URLClassLoader(emptyArray())
+        assertSame(classPools[loader], classPools[loader])
+        assertSame(classPools[ClassLoader.getSystemClassLoader()], classPools[null])
+        assertNotSame(classPools[loader], classPools[URLClassLoader(emptyArray())])
+    }
+
+    @Test
+    fun `given pool over capacity, use must remove least recently used classes`() {
+        val pool = classPools[URLClassLoader(emptyArray())]
+
+        pool.use {
+            it.makeClass("foo.A")
+            it.makeClass("foo.B")
+            it.get("foo.A")
+            it.makeClass("foo.C")
+            assertEquals(3, pool.cachedClassCount())
+        }
+
+        assertEquals(2, pool.cachedClassCount())
+        assertNull(pool.getOrNull("foo.B"))
+        assertNotNull(pool.getOrNull("foo.A"))
+        assertNotNull(pool.getOrNull("foo.C"))
+    }
+
+    @Test
+    fun `given nested use, classes must be removed only after the outer one`() {
+        val pool = classPools[URLClassLoader(emptyArray())]
+
+        pool.use { outer ->
+            outer.makeClass("foo.A")
+            pool.use { inner ->
+                inner.makeClass("foo.B")
+                inner.makeClass("foo.C")
+            }
+            assertNotNull(outer.getOrNull("foo.A"))
+        }
+
+        assertEquals(2, pool.cachedClassCount())
+    }
+
+    @Test
+    fun `given pool over capacity, use must not remove primitive types`() {
+        val pool = classPools[URLClassLoader(emptyArray())]
+
+        pool.use {
+            it.get("int[]")
+            it.makeClass("foo.A")
+            it.makeClass("foo.B")
+            it.makeClass("foo.C")
+        }
+
+        pool.use { assertNotNull(it.get("int[]")) }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class TransformerDispatchIndexTest {
+
+    private class TestTransformer(
+        override val permittedClassNames: Set<String>? = null,
+        override val permittedSuperTypes: Set<String>? = null,
+    ) : TransformerObject {
+        override fun permit(className: String, superName: String?, interfaces: Array<String?>) = true
+        override fun transform(className: String, classFileBuffer: ByteArray, loader: Any?, protectionDomain: Any?) =
+            classFileBuffer
+    }
+
+    private val byName = TestTransformer(permittedClassNames = setOf("foo/Bar"))
+    private val bySuperType = TestTransformer(permittedSuperTypes = setOf("foo/Base", "foo/Api"))
+    private val unindexed = TestTransformer()
+    private val index = TransformerDispatchIndex(listOf(bySuperType, byName, unindexed))
+
+    @Test
+    fun `given unknown class, candidates must contain only unindexed transformers`() {
+        assertEquals(listOf(unindexed), index.candidates("foo/Baz", "java/lang/Object", emptyArray()))
+    }
+
+    @Test
+    fun `given permitted class name, candidates must contain its transformer`() {
+        assertEquals(listOf(byName, unindexed), index.candidates("foo/Bar", "java/lang/Object", emptyArray()))
+    }
+
+    @Test
+    fun `given permitted super types, candidates must keep the order of transformers`() {
+        assertEquals(
+            listOf(bySuperType, byName, unindexed),
+            index.candidates("foo/Bar", "foo/Base", arrayOf("foo/Api", null))
+        )
+    }
+}
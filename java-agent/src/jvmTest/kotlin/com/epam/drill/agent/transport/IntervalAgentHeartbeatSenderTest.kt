@@ -21,13 +21,13 @@ import kotlin.test.assertEquals
 import kotlin.test.assertTrue
 import com.epam.drill.agent.common.transport.AgentMessageDestination
 import com.epam.drill.agent.common.transport.AgentMessageSender
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
 
 class IntervalAgentHeartbeatSenderTest {
 
     private class RecordingSender : AgentMessageSender {
         val sent = Collections.synchronizedList(mutableListOf<Pair<AgentMessageDestination, Any?>>())
-        override fun <T> send(destination: AgentMessageDestination, message: T, serializer: KSerializer<T>) {
+        override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) {
             sent.add(destination to message)
         }
     }
@@ -27,7 +27,7 @@ import com.epam.drill.agent.jvmapi.gen.GetMethodID
 import com.epam.drill.agent.jvmapi.gen.jclass
 import com.epam.drill.agent.jvmapi.gen.jobject
 import kotlinx.cinterop.ExperimentalForeignApi
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
 
 @OptIn(ExperimentalForeignApi::class)
 open class GenericAgentModule(
@@ -60,7 +60,7 @@ open class GenericAgentModule(
     }
 
     private class NopMessageSender : AgentMessageSender {
-        override fun <T> send(destination: AgentMessageDestination, message: T, serializer: KSerializer<T>) = throw NotImplementedError()
+        override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) = throw NotImplementedError()
     }
 
     private class NopConfiguration : AgentConfiguration {
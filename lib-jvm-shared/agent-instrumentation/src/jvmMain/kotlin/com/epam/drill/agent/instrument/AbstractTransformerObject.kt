@@ -21,7 +21,6 @@ import java.io.ByteArrayInputStream
 import javassist.ClassPool
 import javassist.CtBehavior
 import javassist.CtClass
-import javassist.LoaderClassPath
 import mu.KLogger
 import java.security.ProtectionDomain
 
@@ -31,6 +30,10 @@ abstract class AbstractTransformerObject(protected val agentConfiguration: Agent
 
     protected abstract val logger: KLogger
 
+    companion object {
+        private val classPools = ClassPoolCache()
+    }
+
     override fun enabled(): Boolean {
         return agentConfiguration.parameters[INSTRUMENTATION_ENABLED]
     }
@@ -40,22 +43,22 @@ abstract class AbstractTransformerObject(protected val agentConfiguration: Agent
         classFileBuffer: ByteArray,
         loader: Any?,
         protectionDomain: Any?
-    ): ByteArray? = ClassPool.getDefault().run {
+    ): ByteArray? {
         val classLoader = loader ?: ClassLoader.getSystemClassLoader()
-        this.appendClassPath(LoaderClassPath(classLoader as? ClassLoader))
-        if (this.getOrNull(this::class.java.name) == null) {
-            this.appendClassPath(getClassPath())
-        }
-        this.makeClass(ByteArrayInputStream(classFileBuffer), false).let {
-            val logError: (Throwable) -> Unit = { e ->
-                logger.error(e) { "transform: Error during instrumenting, class=${it.name}" }
-            }
-            val transform: (CtClass) -> Unit = { ctClass ->
-                transform(className, ctClass, this, classLoader as? ClassLoader, protectionDomain as? ProtectionDomain)
+        val classPool = classPools[classLoader as? ClassLoader]
+        classPool.appendClassPathOnce(getClassPath())
+        return classPool.use { pool ->
+            pool.makeClass(ByteArrayInputStream(classFileBuffer), false).let {
+                val logError: (Throwable) -> Unit = { e ->
+                    logger.error(e) { "transform: Error during instrumenting, class=${it.name}" }
+                }
+                val transform: (CtClass) -> Unit = { ctClass ->
+                    transform(className, ctClass, pool, classLoader as? ClassLoader, protectionDomain as? ProtectionDomain)
+                }
+                it.defrost()
+                it.runCatching(transform).onFailure(logError)
+                it.toBytecode()
             }
-            it.defrost()
-            it.runCatching(transform).onFailure(logError)
-            it.toBytecode()
         }
     }
 
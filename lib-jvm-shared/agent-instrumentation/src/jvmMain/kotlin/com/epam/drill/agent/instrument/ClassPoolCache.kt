@@ -0,0 +1,124 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.instrument
+
+import java.util.WeakHashMap
+import javassist.ClassPool
+import javassist.CtClass
+import javassist.LoaderClassPath
+
+private const val DEFAULT_MAX_CACHED_CLASSES = 1000
+
+/**
+ * Javassist class pools of class loaders.
+ *
+ * Each class loader gets its own [LoaderClassPool]. Pools are weakly keyed by their class loaders,
+ * so a pool is released together with its class loader.
+ * Classes of the bootstrap class loader are looked up via the system class loader.
+ */
+class ClassPoolCache(private val maxCachedClasses: Int = DEFAULT_MAX_CACHED_CLASSES) {
+    private val pools = WeakHashMap<ClassLoader, LoaderClassPool>()
+
+    operator fun get(loader: ClassLoader?): LoaderClassPool {
+        val classLoader = loader ?: ClassLoader.getSystemClassLoader()
+        return synchronized(pools) {
+            pools.getOrPut(classLoader) { LoaderClassPool(classLoader, maxCachedClasses) }
+        }
+    }
+}
+
+/**
+ * Javassist class pool looking up classes via a single class loader.
+ *
+ * The pool refers to its class loader weakly, so it doesn't prevent the class loader from being collected.
+ * Additional class path entries are appended to the pool only once.
+ *
+ * Cached classes are kept in the least recently used order. Once no transformation is running in [use],
+ * the least recently used classes exceeding [maxCachedClasses] are removed from the pool,
+ * so classes being used by an ongoing transformation are never removed.
+ */
+class LoaderClassPool(
+    classLoader: ClassLoader,
+    private val maxCachedClasses: Int
+) : ClassPool(null) {
+    private val classPaths = HashSet<String>()
+    private val recentlyUsed = LinkedHashSet<String>()
+    private var activeUses = 0
+
+    init {
+        appendClassPath(LoaderClassPath(classLoader))
+    }
+
+    /**
+     * Append a class path entry unless it's already appended
+     * @param pathname the class path entry
+     */
+    fun appendClassPathOnce(pathname: String) = synchronized(classPaths) {
+        if (pathname !in classPaths) {
+            appendClassPath(pathname)
+            classPaths.add(pathname)
+        }
+    }
+
+    /**
+     * Run a transformation using the pool, then remove the least recently used classes if no other one is running
+     * @param block the transformation
+     * @return the result of the transformation
+     */
+    fun <T> use(block: (ClassPool) -> T): T {
+        synchronized(recentlyUsed) { activeUses++ }
+        try {
+            return block(this)
+        } finally {
+            synchronized(recentlyUsed) {
+                if (--activeUses == 0) trim()
+            }
+        }
+    }
+
+    /**
+     * Get the number of classes cached in the pool
+     * @return the number of cached classes
+     */
+    fun cachedClassCount(): Int = synchronized(recentlyUsed) { recentlyUsed.size }
+
+    override fun getCached(classname: String): CtClass? = super.getCached(classname)?.also {
+        // only classes cached via cacheCtClass are tracked, primitive types are put by ClassPool itself and never removed
+        synchronized(recentlyUsed) { if (recentlyUsed.remove(classname)) recentlyUsed.add(classname) }
+    }
+
+    override fun cacheCtClass(classname: String, c: CtClass, dynamic: Boolean) {
+        super.cacheCtClass(classname, c, dynamic)
+        synchronized(recentlyUsed) { touch(classname) }
+    }
+
+    override fun removeCached(classname: String): CtClass? = super.removeCached(classname).also {
+        synchronized(recentlyUsed) { recentlyUsed.remove(classname) }
+    }
+
+    private fun touch(classname: String) {
+        recentlyUsed.remove(classname)
+        recentlyUsed.add(classname)
+    }
+
+    private fun trim() {
+        val iterator = recentlyUsed.iterator()
+        while (recentlyUsed.size > maxCachedClasses && iterator.hasNext()) {
+            super.removeCached(iterator.next())
+            iterator.remove()
+        }
+    }
+}
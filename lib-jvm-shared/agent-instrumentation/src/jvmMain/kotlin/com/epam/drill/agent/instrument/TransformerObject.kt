@@ -16,5 +16,25 @@
 package com.epam.drill.agent.instrument
 
 interface TransformerObject: Transformer {
+    /**
+     * Names of classes which may be permitted by [permit].
+     * Along with [permittedSuperTypes] it's used to dispatch classes without calling [permit] of each transformer.
+     * If both are null, [permit] is called for every class.
+     * Along with [permittedClassPrefixes] it's used to reject classes by name before reading them.
+     */
+    val permittedClassNames: Set<String>? get() = null
+
+    /**
+     * Names of super classes and interfaces of classes which may be permitted by [permit].
+     * @see permittedClassNames
+     */
+    val permittedSuperTypes: Set<String>? get() = null
+
+    /**
+     * Prefixes of names of classes which may be permitted by [permit].
+     * @see permittedClassNames
+     */
+    val permittedClassPrefixes: Set<String>? get() = null
+
     fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean
 }
\ No newline at end of file
@@ -42,6 +42,8 @@ abstract class ApacheHttpClientTransformerObject(agentConfiguration: AgentConfig
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_APACHE_HTTP_CLIENT_ENABLED]
 
+    override val permittedSuperTypes = setOf("org/apache/http/HttpClientConnection", "org/apache/hc/core5/http/io/HttpClientConnection")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         interfaces.any("org/apache/http/HttpClientConnection"::equals) ||
                 interfaces.any("org/apache/hc/core5/http/io/HttpClientConnection"::equals)
@@ -38,6 +38,8 @@ abstract class JavaHttpClientTransformerObject(agentConfiguration: AgentConfigur
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_JAVA_HTTP_CLIENT_ENABLED]
 
+    override val permittedSuperTypes = setOf("java/net/HttpURLConnection", "javax/net/ssl/HttpsURLConnection")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         "java/net/HttpURLConnection" == superName || "javax/net/ssl/HttpsURLConnection" == superName
 
@@ -41,6 +41,8 @@ abstract class OkHttp3ClientTransformerObject(agentConfiguration: AgentConfigura
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_OK_HTTP_CLIENT_ENABLED]
 
+    override val permittedSuperTypes = setOf("okhttp3/internal/http/HttpCodec", "okhttp3/internal/http/ExchangeCodec")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         interfaces.any("okhttp3/internal/http/HttpCodec"::equals) ||
                 interfaces.any("okhttp3/internal/http/ExchangeCodec"::equals)
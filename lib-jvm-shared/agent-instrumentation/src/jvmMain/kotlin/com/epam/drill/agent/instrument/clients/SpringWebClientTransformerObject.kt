@@ -34,6 +34,8 @@ abstract class SpringWebClientTransformerObject(agentConfiguration: AgentConfigu
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_SPRING_WEB_CLIENT_ENABLED]
 
+    override val permittedSuperTypes = setOf("org/springframework/web/reactive/function/client/ClientRequest")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         interfaces.any("org/springframework/web/reactive/function/client/ClientRequest"::equals)
 
@@ -34,6 +34,8 @@ abstract class JettyHttpServerTransformerObject(
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(JETTY_SERVER_HANDLER)
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         JETTY_SERVER_HANDLER == className
 
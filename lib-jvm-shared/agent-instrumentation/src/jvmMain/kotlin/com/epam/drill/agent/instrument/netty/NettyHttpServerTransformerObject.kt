@@ -40,6 +40,8 @@ abstract class NettyHttpServerTransformerObject(
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassPrefixes = setOf(NETTY_CHANNEL_HANDLER_CONTEXT)
+
     override fun permit(
         className: String,
         superName: String?,
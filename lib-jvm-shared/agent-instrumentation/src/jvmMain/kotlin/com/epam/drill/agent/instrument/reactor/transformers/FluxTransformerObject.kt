@@ -31,6 +31,8 @@ abstract class FluxTransformerObject(agentConfiguration: AgentConfiguration) :
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf("reactor/core/publisher/Flux")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/publisher/Flux"
 
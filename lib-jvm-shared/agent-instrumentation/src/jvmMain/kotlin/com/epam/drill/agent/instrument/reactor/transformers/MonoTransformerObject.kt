@@ -33,6 +33,8 @@ abstract class MonoTransformerObject(agentConfiguration: AgentConfiguration) :
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf("reactor/core/publisher/Mono")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/publisher/Mono"
 
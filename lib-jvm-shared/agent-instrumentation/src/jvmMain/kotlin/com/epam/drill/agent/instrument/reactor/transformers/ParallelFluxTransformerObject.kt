@@ -33,6 +33,8 @@ abstract class ParallelFluxTransformerObject(agentConfiguration: AgentConfigurat
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf("reactor/core/publisher/ParallelFlux")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/publisher/ParallelFlux"
 
@@ -35,6 +35,8 @@ abstract class SchedulersTransformerObject(agentConfiguration: AgentConfiguratio
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf("reactor/core/scheduler/Schedulers")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == "reactor/core/scheduler/Schedulers"
 
@@ -31,12 +31,14 @@ abstract class TaskExecutorTransformerObject(agentConfiguration: AgentConfigurat
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(
+        "org/springframework/core/task/SimpleAsyncTaskExecutor",
+        "org/springframework/scheduling/concurrent/ConcurrentTaskExecutor",
+        "org/springframework/scheduling/concurrent/ThreadPoolTaskExecutor"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "org/springframework/core/task/SimpleAsyncTaskExecutor",
-            "org/springframework/scheduling/concurrent/ConcurrentTaskExecutor",
-            "org/springframework/scheduling/concurrent/ThreadPoolTaskExecutor"
-        ).contains(className)
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting TaskExecutorTransformer for $className..." }
@@ -43,6 +43,8 @@ abstract class CadenceTransformerObject(agentConfiguration: AgentConfiguration)
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_CADENCE_ENABLED]
 
+    override val permittedClassNames = setOf(CADENCE_PRODUCER, CADENCE_CONSUMER)
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         CADENCE_PRODUCER == className || CADENCE_CONSUMER == className
 
@@ -43,6 +43,10 @@ abstract class KafkaTransformerObject(agentConfiguration: AgentConfiguration) :
         return super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_KAFKA_ENABLED]
     }
 
+    override val permittedClassNames = setOf(KAFKA_CONSUMER_SPRING)
+
+    override val permittedSuperTypes = setOf(KAFKA_PRODUCER_INTERFACE)
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         KAFKA_CONSUMER_SPRING == className || interfaces.contains(KAFKA_PRODUCER_INTERFACE)
 
@@ -33,6 +33,11 @@ abstract class ReactorTransformerObject(
         return super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_REACTOR_ENABLED]
     }
 
+    // reactor transformers are permitted by class names only
+    override val permittedClassNames = reactorTransformers
+        .takeIf { transformers -> transformers.all { it.permittedClassNames != null } }
+        ?.flatMapTo(HashSet()) { it.permittedClassNames!! }
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         reactorTransformers.any { it.permit(className, null, emptyArray()) }
 
@@ -54,6 +54,8 @@ abstract class SSLEngineTransformerObject(
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_SSL_ENABLED]
 
+    override val permittedSuperTypes = setOf(SSL_ENGINE_CLASS_NAME)
+
     override fun permit(
         className: String,
         superName: String?,
@@ -56,6 +56,10 @@ abstract class TTLTransformerObject(agentConfiguration: AgentConfiguration) : Ab
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_TTL_ENABLED]
 
+    override val permittedClassNames = directTtlClasses.toSet()
+
+    override val permittedSuperTypes = setOf(threadPoolExecutorClass, runnableInterface)
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>): Boolean {
         if (directTtlClasses.contains(className)) return true
         return (threadPoolExecutorClass == superName || interfaces.contains(runnableInterface))
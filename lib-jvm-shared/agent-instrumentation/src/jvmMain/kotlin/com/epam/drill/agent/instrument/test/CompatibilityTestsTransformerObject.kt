@@ -38,6 +38,8 @@ abstract class CompatibilityTestsTransformerObject(agentConfiguration: AgentConf
 
     override fun enabled(): Boolean = super.enabled() && agentConfiguration.parameters[INSTRUMENTATION_COMPATIBILITY_TESTS_ENABLED]
 
+    override val permittedClassNames = setOf(COMPATIBILITY_TEST_CLASS_NAME)
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         className == COMPATIBILITY_TEST_CLASS_NAME
 
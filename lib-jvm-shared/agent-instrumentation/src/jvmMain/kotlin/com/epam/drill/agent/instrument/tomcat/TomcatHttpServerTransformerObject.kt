@@ -42,6 +42,8 @@ abstract class TomcatHttpServerTransformerObject(
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(TOMCAT_HTTP_FILTER)
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         TOMCAT_HTTP_FILTER == className
 
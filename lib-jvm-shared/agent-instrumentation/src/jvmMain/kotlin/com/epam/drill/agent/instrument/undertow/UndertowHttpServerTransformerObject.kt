@@ -40,6 +40,8 @@ abstract class UndertowHttpServerTransformerObject(
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(UNDERTOW_SERVER_CONNECTORS)
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         UNDERTOW_SERVER_CONNECTORS == className
 
@@ -32,14 +32,17 @@ abstract class Jetty10WsMessagesTransformerObject(agentConfiguration: AgentConfi
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    override val permittedClassNames = setOf(
         "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient",
         "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketFrameHandler",
         "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketRemoteEndpoint",
         "org/eclipse/jetty/websocket/javax/client/internal/JsrUpgradeListener",
         "org/eclipse/jetty/websocket/javax/server/internal/JavaxWebSocketCreator",
         "org/eclipse/jetty/websocket/javax/server/internal/JavaxWebSocketServerFrameHandlerFactory"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting Jetty10WsMessagesTransformerObject for $className..." }
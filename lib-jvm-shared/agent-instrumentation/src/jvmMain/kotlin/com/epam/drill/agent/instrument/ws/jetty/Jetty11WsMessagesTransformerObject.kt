@@ -33,7 +33,7 @@ abstract class Jetty11WsMessagesTransformerObject(agentConfiguration: AgentConfi
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    override val permittedClassNames = setOf(
         "org/eclipse/jetty/websocket/core/FrameHandler",
         "org/eclipse/jetty/websocket/core/internal/WebSocketCoreSession",
         "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient",
@@ -42,7 +42,10 @@ abstract class Jetty11WsMessagesTransformerObject(agentConfiguration: AgentConfi
         "org/eclipse/jetty/websocket/server/internal/JettyServerFrameHandlerFactory",
         "org/eclipse/jetty/websocket/jakarta/common/JakartaWebSocketFrameHandler",
         "org/eclipse/jetty/websocket/jakarta/client/internal/JsrUpgradeListener"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting Jetty11WsMessagesTransformerObject for $className..." }
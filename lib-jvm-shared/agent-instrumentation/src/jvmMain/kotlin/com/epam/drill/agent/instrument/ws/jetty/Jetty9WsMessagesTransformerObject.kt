@@ -33,14 +33,17 @@ abstract class Jetty9WsMessagesTransformerObject(agentConfiguration: AgentConfig
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    override val permittedClassNames = setOf(
         "org/eclipse/jetty/websocket/common/WebSocketSession",
         "org/eclipse/jetty/websocket/common/io/AbstractWebSocketConnection",
         "org/eclipse/jetty/websocket/common/events/AbstractEventDriver",
         "org/eclipse/jetty/websocket/common/WebSocketRemoteEndpoint",
         "org/eclipse/jetty/websocket/client/WebSocketClient",
         "org/eclipse/jetty/websocket/server/HandshakeRFC6455",
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting Jetty9WsMessagesTransformerObject for $className..." }
@@ -29,11 +29,13 @@ abstract class JettyWsClientTransformerObject(agentConfiguration: AgentConfigura
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(
+        "org/eclipse/jetty/websocket/client/WebSocketClient",
+        "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "org/eclipse/jetty/websocket/client/WebSocketClient",
-            "org/eclipse/jetty/websocket/core/client/WebSocketCoreClient"
-        ).contains(className)
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting JettyWsClientTransformer for $className..." }
@@ -36,15 +36,17 @@ abstract class JettyWsServerTransformerObject(agentConfiguration: AgentConfigura
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(
+        "org/eclipse/jetty/websocket/common/events/AbstractEventDriver",
+        "org/eclipse/jetty/websocket/common/JettyWebSocketFrameHandler",
+        "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketFrameHandler",
+        "org/eclipse/jetty/websocket/javax/common/UpgradeRequest",
+        "org/eclipse/jetty/websocket/javax/client/internal/JavaxClientUpgradeRequest",
+        "org/eclipse/jetty/websocket/javax/server/internal/JavaxServerUpgradeRequest"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "org/eclipse/jetty/websocket/common/events/AbstractEventDriver",
-            "org/eclipse/jetty/websocket/common/JettyWebSocketFrameHandler",
-            "org/eclipse/jetty/websocket/javax/common/JavaxWebSocketFrameHandler",
-            "org/eclipse/jetty/websocket/javax/common/UpgradeRequest",
-            "org/eclipse/jetty/websocket/javax/client/internal/JavaxClientUpgradeRequest",
-            "org/eclipse/jetty/websocket/javax/server/internal/JavaxServerUpgradeRequest"
-        ).contains(className)
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting JettyWsServerTransformerObject for $className..." }
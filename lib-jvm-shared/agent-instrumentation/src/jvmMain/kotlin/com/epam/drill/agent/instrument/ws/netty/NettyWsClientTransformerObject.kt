@@ -29,12 +29,14 @@ abstract class NettyWsClientTransformerObject(agentConfiguration: AgentConfigura
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(
+        "io/netty/bootstrap/Bootstrap",
+        "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker",
+        "org/springframework/web/reactive/socket/client/ReactorNettyWebSocketClient"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "io/netty/bootstrap/Bootstrap",
-            "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker",
-            "org/springframework/web/reactive/socket/client/ReactorNettyWebSocketClient"
-        ).contains(className)
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting NettyWsClientTransformer for $className..." }
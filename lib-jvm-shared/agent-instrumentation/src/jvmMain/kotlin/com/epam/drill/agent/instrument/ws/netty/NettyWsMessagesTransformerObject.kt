@@ -30,12 +30,14 @@ abstract class NettyWsMessagesTransformerObject(agentConfiguration: AgentConfigu
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(
+        "io/netty/channel/AbstractChannelHandlerContext",
+        "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker",
+        "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "io/netty/channel/AbstractChannelHandlerContext",
-            "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker",
-            "io/netty/handler/codec/http/websocketx/WebSocketClientHandshaker"
-        ).contains(className)
+        className in permittedClassNames
 
     override fun transform(
         className: String,
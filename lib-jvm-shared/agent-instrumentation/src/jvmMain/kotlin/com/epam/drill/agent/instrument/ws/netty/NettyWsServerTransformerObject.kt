@@ -35,11 +35,13 @@ abstract class NettyWsServerTransformerObject(agentConfiguration: AgentConfigura
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf(
+        "io/netty/channel/AbstractChannelHandlerContext",
+        "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker"
+    )
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
-        listOf(
-            "io/netty/channel/AbstractChannelHandlerContext",
-            "io/netty/handler/codec/http/websocketx/WebSocketServerHandshaker"
-        ).contains(className)
+        className in permittedClassNames
 
     override fun transform(
         className: String,
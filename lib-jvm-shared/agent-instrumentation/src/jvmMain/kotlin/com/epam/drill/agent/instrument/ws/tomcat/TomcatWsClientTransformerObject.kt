@@ -30,6 +30,8 @@ abstract class TomcatWsClientTransformerObject(agentConfiguration: AgentConfigur
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf("org/apache/tomcat/websocket/WsWebSocketContainer")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         "org/apache/tomcat/websocket/WsWebSocketContainer" == className
 
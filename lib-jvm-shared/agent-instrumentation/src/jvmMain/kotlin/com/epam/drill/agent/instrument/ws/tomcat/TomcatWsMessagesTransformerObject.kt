@@ -34,14 +34,17 @@ abstract class TomcatWsMessagesTransformerObject(agentConfiguration: AgentConfig
     override val logger = KotlinLogging.logger {}
     private var openingSessionHeaders: ThreadLocal<Map<String, String>?> = ThreadLocal()
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    override val permittedClassNames = setOf(
         "org/apache/tomcat/websocket/WsSession",
         "org/apache/tomcat/websocket/WsFrameBase",
         "org/apache/tomcat/websocket/WsRemoteEndpointImplBase",
         "org/apache/tomcat/websocket/WsWebSocketContainer",
         "org/apache/tomcat/websocket/server/WsHttpUpgradeHandler",
         "org/apache/tomcat/websocket/server/UpgradeUtil"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        className in permittedClassNames
 
     override fun transform(
         className: String,
@@ -35,6 +35,8 @@ abstract class TomcatWsServerTransformerObject(agentConfiguration: AgentConfigur
 
     override val logger = KotlinLogging.logger {}
 
+    override val permittedClassNames = setOf("org/apache/tomcat/websocket/server/WsHttpUpgradeHandler")
+
     override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
         "org/apache/tomcat/websocket/server/WsHttpUpgradeHandler" == className
 
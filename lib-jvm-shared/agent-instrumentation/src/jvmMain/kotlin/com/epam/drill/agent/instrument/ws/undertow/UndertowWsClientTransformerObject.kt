@@ -32,10 +32,15 @@ abstract class UndertowWsClientTransformerObject(agentConfiguration: AgentConfig
 
     override val logger = KotlinLogging.logger {}
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    override val permittedClassNames = setOf(
         "io/undertow/websockets/jsr/UndertowSession",
         "io/undertow/websockets/jsr/ServerWebSocketContainer\$ClientNegotiation"
-    ).contains(className) || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
+    )
+
+    override val permittedSuperTypes = setOf("io/undertow/websockets/client/WebSocketClientHandshake")
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        className in permittedClassNames || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting UndertowWsClientTransformer for $className..." }
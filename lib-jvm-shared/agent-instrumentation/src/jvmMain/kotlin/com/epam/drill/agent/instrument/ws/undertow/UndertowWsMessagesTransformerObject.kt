@@ -34,7 +34,7 @@ abstract class UndertowWsMessagesTransformerObject(agentConfiguration: AgentConf
 
     private val proxyDelegate = UndertowWsMessagesProxyDelegate(this)
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    override val permittedClassNames = setOf(
         "io/undertow/websockets/jsr/FrameHandler",
         "io/undertow/websockets/jsr/JsrWebSocketFilter",
         "io/undertow/websockets/jsr/WebSocketSessionRemoteEndpoint",
@@ -43,7 +43,12 @@ abstract class UndertowWsMessagesTransformerObject(agentConfiguration: AgentConf
         "io/undertow/websockets/core/WebSockets",
         "org/springframework/web/reactive/socket/adapter/UndertowWebSocketHandlerAdapter",
         "org/springframework/web/reactive/socket/adapter/UndertowWebSocketSession"
-    ).contains(className) || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
+    )
+
+    override val permittedSuperTypes = setOf("io/undertow/websockets/client/WebSocketClientHandshake")
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        className in permittedClassNames || "io/undertow/websockets/client/WebSocketClientHandshake" == superName
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting UndertowWsMessagesTransformer for $className..." }
@@ -42,12 +42,15 @@ abstract class UndertowWsServerTransformerObject(
     override val logger = KotlinLogging.logger {}
     private var openingSessionHeaders: ThreadLocal<Map<String, String>?> = ThreadLocal()
 
-    override fun permit(className: String, superName: String?, interfaces: Array<String?>) = listOf(
+    override val permittedClassNames = setOf(
         "io/undertow/websockets/jsr/UndertowSession",
         "io/undertow/websockets/jsr/EndpointSessionHandler",
         "io/undertow/websockets/jsr/FrameHandler",
         "org/springframework/web/reactive/socket/adapter/UndertowWebSocketHandlerAdapter"
-    ).contains(className)
+    )
+
+    override fun permit(className: String, superName: String?, interfaces: Array<String?>) =
+        className in permittedClassNames
 
     override fun transform(className: String, ctClass: CtClass) {
         logger.info { "transform: Starting UndertowWsServerTransformer for $className..." }
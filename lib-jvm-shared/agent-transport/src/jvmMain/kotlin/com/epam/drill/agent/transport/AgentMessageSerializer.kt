@@ -16,7 +16,7 @@
 package com.epam.drill.agent.transport
 
 import com.epam.drill.agent.common.transport.AgentMessage
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
 
 /**
  * A message serializer interface for [AgentMessage] serialization before sending by [AgentMessageTransport].
@@ -31,5 +31,11 @@ import kotlinx.serialization.KSerializer
  */
 interface AgentMessageSerializer {
     fun contentType(): String
-    fun <T> serialize(message: T, serializer: KSerializer<T>): ByteArray
+
+    /**
+     * @return the encoding already applied to serialized data (e.g. "gzip"), or an empty string if none
+     */
+    fun contentEncoding(): String = ""
+
+    fun <T> serialize(message: T, serializer: SerializationStrategy<T>): ByteArray
 }
@@ -33,5 +33,13 @@ import com.epam.drill.agent.common.transport.ResponseStatus
  * @see com.epam.drill.agent.common.transport.AgentMessage
  */
 interface AgentMessageTransport {
-    fun send(destination: AgentMessageDestination, message: ByteArray? = null, contentType: String = ""): ResponseStatus<ByteArray>
+    /**
+     * @param contentEncoding the encoding already applied to the message, see [AgentMessageSerializer.contentEncoding]
+     */
+    fun send(
+        destination: AgentMessageDestination,
+        message: ByteArray? = null,
+        contentType: String = "",
+        contentEncoding: String = ""
+    ): ResponseStatus<ByteArray>
 }
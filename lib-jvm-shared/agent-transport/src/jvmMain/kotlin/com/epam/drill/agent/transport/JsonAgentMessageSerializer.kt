@@ -18,9 +18,18 @@ package com.epam.drill.agent.transport
 import kotlinx.serialization.json.Json
 import kotlinx.serialization.json.encodeToStream
 import java.io.ByteArrayOutputStream
-import kotlinx.serialization.KSerializer
+import java.util.zip.GZIPOutputStream
+import kotlinx.serialization.SerializationStrategy
 
-class JsonAgentMessageSerializer : AgentMessageSerializer {
+/**
+ * A JSON [AgentMessageSerializer].
+ *
+ * If [gzipCompression] is enabled, messages are compressed while being encoded,
+ * so that neither the uncompressed JSON nor its copy is kept in memory.
+ */
+class JsonAgentMessageSerializer(
+    private val gzipCompression: Boolean = false,
+) : AgentMessageSerializer {
 
     private val json = Json {
         encodeDefaults = true
@@ -29,8 +38,13 @@ class JsonAgentMessageSerializer : AgentMessageSerializer {
 
     override fun contentType(): String = "application/json"
 
-    override fun <T> serialize(message: T, serializer: KSerializer<T>): ByteArray = ByteArrayOutputStream().use {
-        json.encodeToStream(serializer, message, it)
+    override fun contentEncoding(): String = if (gzipCompression) "gzip" else ""
+
+    override fun <T> serialize(message: T, serializer: SerializationStrategy<T>): ByteArray = ByteArrayOutputStream().use {
+        if (gzipCompression)
+            GZIPOutputStream(it).use { gzip -> json.encodeToStream(serializer, message, gzip) }
+        else
+            json.encodeToStream(serializer, message, it)
         it.toByteArray()
     }
 }
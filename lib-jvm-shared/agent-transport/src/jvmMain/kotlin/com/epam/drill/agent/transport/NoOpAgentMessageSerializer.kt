@@ -17,11 +17,11 @@
 package com.epam.drill.agent.transport
 
 
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
 import com.epam.drill.agent.common.transport.AgentMessage
 
 class NoOpAgentMessageSerializer : AgentMessageSerializer {
     override fun contentType(): String = "noop"
 
-    override fun <T> serialize(message: T, serializer: KSerializer<T>): ByteArray = ByteArray(0)
+    override fun <T> serialize(message: T, serializer: SerializationStrategy<T>): ByteArray = ByteArray(0)
 }
\ No newline at end of file
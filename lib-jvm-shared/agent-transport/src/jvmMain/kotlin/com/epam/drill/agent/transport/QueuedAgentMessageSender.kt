@@ -18,7 +18,8 @@ package com.epam.drill.agent.transport
 import mu.KotlinLogging
 import com.epam.drill.agent.common.transport.AgentMessageDestination
 import com.epam.drill.agent.common.transport.AgentMessageSender
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
@@ -47,6 +48,8 @@ open class QueuedAgentMessageSender(
     }
 
     private val isRunning = AtomicBoolean(true)
+    // keyed by serialized message instances, arrays are compared by identity
+    private val deliveryListeners = ConcurrentHashMap<ByteArray, (Boolean) -> Unit>()
 
     init {
         repeat(maxThreads) {
@@ -54,9 +57,25 @@ open class QueuedAgentMessageSender(
         }
     }
 
-    override fun <T> send(destination: AgentMessageDestination, message: T, serializer: KSerializer<T>) {
+    override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) =
+        queue(destination, message, serializer, null)
+
+    override fun <T> send(
+        destination: AgentMessageDestination,
+        message: T,
+        serializer: SerializationStrategy<T>,
+        onDelivery: (delivered: Boolean) -> Unit
+    ) = queue(destination, message, serializer, onDelivery)
+
+    private fun <T> queue(
+        destination: AgentMessageDestination,
+        message: T,
+        serializer: SerializationStrategy<T>,
+        onDelivery: ((Boolean) -> Unit)?
+    ) {
         val mappedDestination = destinationMapper.map(destination)
         val serializedMessage = messageSerializer.serialize(message, serializer)
+        onDelivery?.let { deliveryListeners[serializedMessage] = it }
         if (!isRunning.get()) {
             handleUnsent(mappedDestination, serializedMessage, "sender is not running")
             return
@@ -148,14 +167,20 @@ open class QueuedAgentMessageSender(
         logger.trace {
             "Sending to $destination on attempt: $attempt"
         }
-        return transport.send(destination, message, messageSerializer.contentType()).onError { error ->
+        return transport.send(
+            destination,
+            message,
+            messageSerializer.contentType(),
+            messageSerializer.contentEncoding()
+        ).onError { error ->
             logger.trace { "Attempt $attempt send to $destination failed. Retrying in ${delay}ms. Error message: $error" }
         }.onSuccess {
             logger.debug {
-                val serializedAsString = message.decodeToString()
+                val serializedAsString = message.toLogString()
                 "Sent to $destination on attempt: $attempt, message: $serializedAsString"
             }
             messageSendingListener?.onSent(destination, message)
+            notifyDelivery(message, true)
         }.success
     }
 
@@ -179,6 +204,10 @@ open class QueuedAgentMessageSender(
         logger.info { "Finished unloading message queue." }
     }
 
+    private fun ByteArray.toLogString() = messageSerializer.contentEncoding().let { encoding ->
+        if (encoding.isEmpty()) decodeToString() else "$size bytes of $encoding"
+    }
+
     /**
      * Handles the case when a message cannot be sent because the queue is full, shutdown, or attempts have been exhausted.
      * @param destination The destination to which the message was intended to be sent.
@@ -191,10 +220,18 @@ open class QueuedAgentMessageSender(
         reason: String
     ): Boolean = runCatching {
         logger.debug {
-            val serializedAsString = message.decodeToString()
+            val serializedAsString = message.toLogString()
             "Failed to send message because $reason, destination: $destination, message: $serializedAsString"
         }
+        notifyDelivery(message, false)
         messageSendingListener?.onUnsent(destination, message)
         true
     }.getOrDefault(false)
+
+    private fun notifyDelivery(message: ByteArray, delivered: Boolean) {
+        val onDelivery = deliveryListeners.remove(message) ?: return
+        runCatching { onDelivery(delivered) }.onFailure {
+            logger.warn(it) { "Message delivery listener failed" }
+        }
+    }
 }
@@ -17,7 +17,7 @@ package com.epam.drill.agent.transport
 
 import com.epam.drill.agent.common.transport.AgentMessageDestination
 import com.epam.drill.agent.common.transport.AgentMessageSender
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
 
 open class SimpleAgentMessageSender(
     private val transport: AgentMessageTransport,
@@ -25,11 +25,12 @@ open class SimpleAgentMessageSender(
     private val destinationMapper: AgentMessageDestinationMapper = StubAgentDestinationMapper
 ) : AgentMessageSender {
 
-    override fun <T>send(destination: AgentMessageDestination, message: T, serializer: KSerializer<T>) {
+    override fun <T>send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) {
         transport.send(
             destinationMapper.map(destination),
             messageSerializer.serialize(message, serializer),
-            messageSerializer.contentType()
+            messageSerializer.contentType(),
+            messageSerializer.contentEncoding()
         ).onError {
             error("Failed to send message from $destination, error message: $it")
         }
@@ -84,7 +84,8 @@ class HttpAgentMessageTransport(
     override fun send(
         destination: AgentMessageDestination,
         message: ByteArray?,
-        contentType: String
+        contentType: String,
+        contentEncoding: String
     ): ResponseStatus<ByteArray> = clientBuilder.build().use { client ->
         val request = when (destination.type) {
             "GET" -> HttpGet(serverUri.resolve(destination.target))
@@ -99,13 +100,15 @@ class HttpAgentMessageTransport(
         request.setHeader(HttpHeaders.CONTENT_TYPE, mimeType)
         if (message != null) {
             request.entity = ByteArrayEntity(message, getContentType(mimeType))
-            if (gzipCompression) {
+            if (contentEncoding.isNotEmpty()) {
+                request.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding)
+            } else if (gzipCompression) {
                 request.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip")
                 request.entity = GzipCompressingEntity(request.entity)
             }
         }
         logger.trace {
-            val messageAsString = message?.decodeToString()
+            val messageAsString = if (contentEncoding.isEmpty()) message?.decodeToString() else "${message?.size} bytes of $contentEncoding"
             "execute: Request to ${request.uri}, method: ${request.method}, request body: $messageAsString"
         }
 
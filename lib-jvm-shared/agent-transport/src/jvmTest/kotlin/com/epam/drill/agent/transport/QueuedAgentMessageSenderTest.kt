@@ -92,6 +92,7 @@ class QueuedAgentMessageSenderTest {
             serialize(it.invocation.args[0] as TestAgentMessage)
         }
         every { messageSerializer.contentType() } returns "test/test"
+        every { messageSerializer.contentEncoding() } returns ""
         every { destinationMapper.map(capture(incomingDestinations)) } answers FunctionAnswer {
             mapDestination(it.invocation.args[0] as AgentMessageDestination)
         }
@@ -28,6 +28,7 @@ import org.apache.hc.client5.http.impl.classic.CloseableHttpClient
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder
 import org.apache.hc.core5.http.ClassicHttpRequest
 import org.apache.hc.core5.http.HttpHeaders
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity
 import org.apache.hc.core5.http.io.HttpClientResponseHandler
 import com.epam.drill.agent.common.transport.AgentMessageDestination
 import com.epam.drill.agent.common.transport.ResponseStatus
@@ -99,6 +100,17 @@ class HttpAgentMessageTransportTest {
         verifyClassicHttpRequest<HttpPost>("http://someadmin/somepath", "*/*")
     }
 
+    @Test
+    fun `pre-encoded message`() = withHttpClientBuilder {
+        val transport = HttpAgentMessageTransport("http://someadmin", "")
+        val destination = AgentMessageDestination("POST", "somepath")
+        val status = transport.send(destination, ByteArray(2), "mime/type", "gzip").success
+
+        assertTrue(status)
+        assertIs<ByteArrayEntity>(request.captured.entity)
+        assertEquals("gzip", request.captured.getHeader(HttpHeaders.CONTENT_ENCODING).value)
+    }
+
     private inline fun withHttpClientBuilder(block: () -> Unit) = mockkStatic(HttpClientBuilder::class) {
         every { HttpClientBuilder.create() } returns clientBuilder
         block()
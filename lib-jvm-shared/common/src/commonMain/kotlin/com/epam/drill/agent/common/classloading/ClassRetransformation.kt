@@ -0,0 +1,56 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.common.classloading
+
+import kotlin.jvm.Volatile
+
+/**
+ * Registry of the retransformation of already loaded classes.
+ * It's registered by the agent if the JVM supports class retransformation,
+ * so modules can instrument classes that have been loaded before.
+ */
+object ClassRetransformation {
+    @Volatile
+    private var retransformer: ((classNames: Set<String>, batchSize: Int) -> Int)? = null
+    @Volatile
+    private var loadedClassNames: (() -> Set<String>)? = null
+
+    fun register(
+        retransformer: (classNames: Set<String>, batchSize: Int) -> Int,
+        loadedClassNames: () -> Set<String>
+    ) {
+        this.retransformer = retransformer
+        this.loadedClassNames = loadedClassNames
+    }
+
+    fun isAvailable(): Boolean = retransformer != null
+
+    /**
+     * Retransform loaded classes with the given names
+     * @param classNames internal names of the classes
+     * @param batchSize max count of classes retransformed at once
+     * @return count of retransformed classes
+     */
+    fun retransform(classNames: Set<String>, batchSize: Int): Int =
+        retransformer?.invoke(classNames, batchSize) ?: 0
+
+    /**
+     * Get names of loaded classes which can be retransformed
+     * @return internal names of the classes
+     */
+    fun loadedClassNames(): Set<String> =
+        loadedClassNames?.invoke() ?: emptySet()
+}
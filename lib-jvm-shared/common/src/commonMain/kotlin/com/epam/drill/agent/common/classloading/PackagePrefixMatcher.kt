@@ -0,0 +1,48 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.common.classloading
+
+private const val EXCLUDED = "!"
+private const val SUBCLASS_OF = "!subclassOf:"
+
+/**
+ * Compiled form of [ClassSource.prefixMatches] for matching many classes against the same package prefixes.
+ *
+ * Prefixes starting with "!" exclude matching classes, prefixes starting with "!subclassOf:"
+ * exclude classes with matching super classes.
+ */
+class PackagePrefixMatcher(prefixes: Iterable<String>) {
+    val includedPrefixes: Set<String> = prefixes.filterNot { it.startsWith(EXCLUDED) }.toSet()
+    private val included = PrefixTrie(includedPrefixes)
+    private val excluded = PrefixTrie(
+        prefixes.filter { it.startsWith(EXCLUDED) && !it.startsWith(SUBCLASS_OF) }.map { it.removePrefix(EXCLUDED) }
+    )
+    private val excludedSuperclasses = PrefixTrie(
+        prefixes.filter { it.startsWith(SUBCLASS_OF) }.map { it.removePrefix(SUBCLASS_OF) }
+    )
+
+    /**
+     * Check if the class matches the package prefixes
+     * @param className the class name
+     * @param superName the super class name, if known
+     * @param offset the index in the class and super class names to start matching from
+     * @return the same result as [ClassSource.prefixMatches]
+     */
+    fun matches(className: String, superName: String? = null, offset: Int = 0): Boolean =
+        included.matches(className, offset) &&
+                !excluded.matches(className, offset) &&
+                (superName.isNullOrBlank() || !excludedSuperclasses.matches(superName, offset))
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.common.classloading
+
+/**
+ * Compiled trie of name prefixes.
+ *
+ * Nodes are stored in flat arrays, and child edges of a node are sorted by char,
+ * so a name is matched in one pass over its chars without allocations.
+ */
+class PrefixTrie(prefixes: Iterable<String>) {
+    private val terminal: BooleanArray
+    private val edgesStart: IntArray
+    private val edgesEnd: IntArray
+    private val edgeChars: CharArray
+    private val edgeTargets: IntArray
+
+    init {
+        val root = Node()
+        prefixes.forEach { prefix ->
+            prefix.fold(root) { node, char -> node.children.getOrPut(char) { Node() } }.terminal = true
+        }
+        val nodes = mutableListOf(root)
+        var index = 0
+        while (index < nodes.size) {
+            nodes[index].children.keys.sorted().forEach { nodes.add(nodes[index].children.getValue(it)) }
+            index++
+        }
+        val numbers = nodes.withIndex().associate { (number, node) -> node to number }
+        terminal = BooleanArray(nodes.size) { nodes[it].terminal }
+        edgesStart = IntArray(nodes.size)
+        edgesEnd = IntArray(nodes.size)
+        edgeChars = CharArray(nodes.size - 1)
+        edgeTargets = IntArray(nodes.size - 1)
+        var edge = 0
+        nodes.forEachIndexed { number, node ->
+            edgesStart[number] = edge
+            node.children.keys.sorted().forEach { char ->
+                edgeChars[edge] = char
+                edgeTargets[edge] = numbers.getValue(node.children.getValue(char))
+                edge++
+            }
+            edgesEnd[number] = edge
+        }
+    }
+
+    /**
+     * Check if the name starts with any of the prefixes
+     * @param name the name
+     * @param offset the index in the name to start matching from
+     * @return true if any of the prefixes matches
+     */
+    fun matches(name: String, offset: Int = 0): Boolean {
+        var node = 0
+        var index = offset
+        while (!terminal[node]) {
+            if (index >= name.length) return false
+            node = child(node, name[index++])
+            if (node < 0) return false
+        }
+        return true
+    }
+
+    private fun child(node: Int, char: Char): Int {
+        var low = edgesStart[node]
+        var high = edgesEnd[node] - 1
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            val middleChar = edgeChars[middle]
+            when {
+                middleChar < char -> low = middle + 1
+                middleChar > char -> high = middle - 1
+                else -> return edgeTargets[middle]
+            }
+        }
+        return -1
+    }
+
+    private class Node(
+        val children: MutableMap<Char, Node> = HashMap(),
+        var terminal: Boolean = false
+    )
+}
@@ -15,7 +15,7 @@
  */
 package com.epam.drill.agent.common.transport
 
-import kotlinx.serialization.KSerializer
+import kotlinx.serialization.SerializationStrategy
 
 /**
  * An interface to send [AgentMessage] objects to [AgentMessageDestination].
@@ -27,6 +27,27 @@ import kotlinx.serialization.KSerializer
  * @see [AgentMessageDestination]
  */
 interface AgentMessageSender {
-    fun <T>send(destination: AgentMessageDestination, message: T, serializer: KSerializer<T>)
+    fun <T>send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>)
+
+    /**
+     * Send the message and report whether it has been delivered.
+     * By default, the message is considered delivered if [send] doesn't throw.
+     * @param onDelivery called with true once the message is delivered, or with false if it's dropped
+     */
+    fun <T>send(
+        destination: AgentMessageDestination,
+        message: T,
+        serializer: SerializationStrategy<T>,
+        onDelivery: (delivered: Boolean) -> Unit
+    ) {
+        try {
+            send(destination, message, serializer)
+        } catch (e: Throwable) {
+            onDelivery(false)
+            throw e
+        }
+        onDelivery(true)
+    }
+
     fun shutdown() {}
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.common.classloading
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class PackagePrefixMatcherTest {
+
+    private val prefixes = listOf("foo/bar", "foo/baz/Qux", "!foo/bar/Bar", "!subclassOf:foo/bar/Foo")
+
+    @Test
+    fun `prefix trie matching`() {
+        val trie = PrefixTrie(listOf("foo/bar", "foo/b", "baz"))
+        assertTrue { trie.matches("foo/bar/Baz") }
+        assertTrue { trie.matches("foo/bx") }
+        assertTrue { trie.matches("Lbaz/Qux", 1) }
+        assertFalse { trie.matches("foo/") }
+        assertFalse { trie.matches("qux/Baz") }
+        assertFalse { PrefixTrie(emptyList()).matches("foo/bar") }
+        assertTrue { PrefixTrie(listOf("")).matches("foo/bar") }
+    }
+
+    @Test
+    fun `package prefix matching must be the same as class source prefix matching`() {
+        val matcher = PackagePrefixMatcher(prefixes)
+        listOf(
+            "foo/bar/Baz" to null,
+            "foo/bar/Bar" to null,
+            "foo/bar/Bar2" to null,
+            "foo/baz/Baz" to null,
+            "foo/baz/Qux" to null,
+            "foo/bar/Baz" to "foo/bar/Foo",
+            "foo/bar/Baz" to "foo/bar/Qux",
+            "foo/bar/Baz" to "",
+            "java/lang/String" to "java/lang/Object",
+        ).forEach { (className, superName) ->
+            assertEquals(
+                ClassSource(className, superName).prefixMatches(prefixes),
+                matcher.matches(className, superName),
+                "$className: $superName"
+            )
+            assertEquals(
+                ClassSource("L$className", superName?.let { "L$it" }).prefixMatches(prefixes, 1),
+                matcher.matches("L$className", superName?.let { "L$it" }, 1),
+                "L$className: $superName"
+            )
+        }
+    }
+
+    @Test
+    fun `included prefixes must not contain exclusions`() {
+        assertEquals(setOf("foo/bar", "foo/baz/Qux"), PackagePrefixMatcher(prefixes).includedPrefixes)
+    }
+}
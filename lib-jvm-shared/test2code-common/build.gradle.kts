@@ -36,6 +36,11 @@ kotlin {
                 api(project(":common"))
             }
         }
+        val commonTest by getting {
+            dependencies {
+                implementation(kotlin("test"))
+            }
+        }
     }
 }
 
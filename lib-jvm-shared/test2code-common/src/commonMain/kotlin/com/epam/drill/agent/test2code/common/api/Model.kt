@@ -68,7 +68,55 @@ data class MethodCoverage(
     // We need to update ExeclassData instead of storing a new one.
     override fun hashCode(): Int {
         var result = signature.hashCode()
-        result = 31 * result + testId.hashCode() + testSessionId.hashCode()
+        result = 31 * result + testId.hashCode()
+        result = 31 * result + testSessionId.hashCode()
+        return result
+    }
+}
+
+/**
+ * Coverage of a method containing only probes covered since the previous sending of the same method,
+ * the delta counterpart of [MethodCoverage]
+ * @param signature the signature of the method
+ * @param bodyChecksum the checksum of the method body
+ * @param testId the test id
+ * @param testSessionId the test session id
+ * @param probesCount the count of probes of the method
+ * @param newProbes ascending indices of newly covered probes, relative to the method start
+ */
+@Serializable
+data class DeltaMethodCoverage(
+    val signature: String,
+    val bodyChecksum: String,
+    val testId: String?,
+    val testSessionId: String?,
+    val probesCount: Int,
+    @Serializable(with = ProbeIndicesSerializer::class)
+    val newProbes: IntArray,
+) {
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other == null || this::class != other::class) return false
+
+        other as DeltaMethodCoverage
+
+        if (signature != other.signature) return false
+        if (bodyChecksum != other.bodyChecksum) return false
+        if (testId != other.testId) return false
+        if (testSessionId != other.testSessionId) return false
+        if (probesCount != other.probesCount) return false
+        if (!newProbes.contentEquals(other.newProbes)) return false
+
+        return true
+    }
+
+    override fun hashCode(): Int {
+        var result = signature.hashCode()
+        result = 31 * result + bodyChecksum.hashCode()
+        result = 31 * result + (testId?.hashCode() ?: 0)
+        result = 31 * result + (testSessionId?.hashCode() ?: 0)
+        result = 31 * result + probesCount
+        result = 31 * result + newProbes.contentHashCode()
         return result
     }
 }
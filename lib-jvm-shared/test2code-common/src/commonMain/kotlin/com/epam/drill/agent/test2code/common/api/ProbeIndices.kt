@@ -0,0 +1,78 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.common.api
+
+import kotlinx.serialization.KSerializer
+import kotlinx.serialization.descriptors.PrimitiveKind
+import kotlinx.serialization.descriptors.PrimitiveSerialDescriptor
+import kotlinx.serialization.descriptors.SerialDescriptor
+import kotlinx.serialization.encoding.Decoder
+import kotlinx.serialization.encoding.Encoder
+
+/**
+ * Serializes ascending probe indices as comma-separated runs, e.g. [0, 1, 2, 5, 7, 8] as "0-2,5,7-8"
+ */
+object ProbeIndicesSerializer : KSerializer<IntArray> {
+
+    override fun serialize(encoder: Encoder, value: IntArray) {
+        encoder.encodeString(value.toRunsString())
+    }
+
+    override fun deserialize(decoder: Decoder): IntArray {
+        return decoder.decodeString().toProbeIndices()
+    }
+
+    override val descriptor: SerialDescriptor
+        get() = PrimitiveSerialDescriptor("ProbeIndices", PrimitiveKind.STRING)
+}
+
+/**
+ * Encode ascending probe indices as comma-separated runs
+ * @return the runs string, empty for empty indices
+ */
+fun IntArray.toRunsString(): String {
+    val result = StringBuilder()
+    var i = 0
+    while (i < size) {
+        val start = this[i]
+        while (i + 1 < size && this[i + 1] == this[i] + 1) i++
+        if (result.isNotEmpty()) result.append(',')
+        result.append(start)
+        if (this[i] != start) result.append('-').append(this[i])
+        i++
+    }
+    return result.toString()
+}
+
+/**
+ * Decode probe indices encoded by [toRunsString]
+ * @return ascending probe indices
+ */
+fun String.toProbeIndices(): IntArray {
+    if (isEmpty()) return IntArray(0)
+    val runs = split(',')
+    val ranges = runs.map { run ->
+        val dash = run.indexOf('-')
+        if (dash < 0) run.toInt()..run.toInt()
+        else run.substring(0, dash).toInt()..run.substring(dash + 1).toInt()
+    }
+    val result = IntArray(ranges.sumOf { it.last - it.first + 1 })
+    var i = 0
+    ranges.forEach { range ->
+        for (index in range) result[i++] = index
+    }
+    return result
+}
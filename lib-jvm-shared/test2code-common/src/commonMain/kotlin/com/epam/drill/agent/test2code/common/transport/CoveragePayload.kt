@@ -17,6 +17,7 @@ package com.epam.drill.agent.test2code.common.transport
 
 import kotlinx.serialization.Serializable
 import com.epam.drill.agent.common.transport.AgentMessage
+import com.epam.drill.agent.test2code.common.api.DeltaMethodCoverage
 import com.epam.drill.agent.test2code.common.api.MethodCoverage
 
 @Serializable
@@ -28,3 +29,16 @@ data class CoveragePayload(
     val buildVersion: String?,
     val coverage: List<MethodCoverage>
 ): AgentMessage()
+
+/**
+ * Coverage payload of the delta wire format, see [DeltaMethodCoverage]
+ */
+@Serializable
+data class DeltaCoveragePayload(
+    val groupId: String,
+    val appId: String,
+    val instanceId: String,
+    val commitSha: String?,
+    val buildVersion: String?,
+    val coverage: List<DeltaMethodCoverage>
+): AgentMessage()
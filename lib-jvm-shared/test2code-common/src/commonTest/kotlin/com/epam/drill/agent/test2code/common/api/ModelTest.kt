@@ -0,0 +1,40 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.common.api
+
+import kotlin.test.Test
+import kotlin.test.assertNotEquals
+
+class ModelTest {
+
+    @Test
+    fun `method coverage with swapped test and session ids must have different hash codes`() {
+        val probes = booleanArrayOf(true).toBitSet()
+
+        assertNotEquals(
+            MethodCoverage("foo", "abc", "test", "session", probes).hashCode(),
+            MethodCoverage("foo", "abc", "session", "test", probes).hashCode()
+        )
+    }
+
+    @Test
+    fun `delta method coverage with swapped test and session ids must have different hash codes`() {
+        assertNotEquals(
+            DeltaMethodCoverage("foo", "abc", "test", "session", 1, intArrayOf(0)).hashCode(),
+            DeltaMethodCoverage("foo", "abc", "session", "test", 1, intArrayOf(0)).hashCode()
+        )
+    }
+}
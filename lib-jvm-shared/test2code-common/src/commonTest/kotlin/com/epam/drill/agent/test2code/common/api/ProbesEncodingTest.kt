@@ -0,0 +1,67 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.common.api
+
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class ProbesEncodingTest {
+
+    private val probes = listOf(
+        booleanArrayOf(),
+        booleanArrayOf(false),
+        booleanArrayOf(true),
+        booleanArrayOf(false, true, false, false),
+        BooleanArray(63) { true },
+        BooleanArray(64) { it % 3 == 0 },
+        BooleanArray(65) { false },
+        BooleanArray(1000) { it % 7 == 0 || it > 990 },
+    )
+
+    @Test
+    fun `base64 encoding must round-trip probes`() {
+        probes.forEach {
+            assertContentEquals(it, it.toBitSet().toBase64String().base64ToBitSet().toBooleanArray())
+        }
+    }
+
+    @Test
+    fun `base64 encoding must decode to the same probes as the bit string encoding`() {
+        probes.forEach {
+            val fromBitString = it.toBitSet().toBitString().toBitSet()
+            val fromBase64 = it.toBitSet().toBase64String().base64ToBitSet()
+            assertEquals(fromBitString, fromBase64)
+            assertEquals(it.toBitSet().toBitString(), fromBase64.toBitString())
+        }
+    }
+
+    @Test
+    fun `encode must write the same strings as probes encodings`() {
+        probes.forEach {
+            assertEquals(it.toBitSet().toBitString(), ProbesEncoding.BIT_STRING.encode(it.size) { index -> it[index] })
+            assertEquals(it.toBitSet().toBase64String(), ProbesEncoding.BASE64.encode(it.size) { index -> it[index] })
+        }
+    }
+
+    @Test
+    fun `base64 encoding must be shorter than the bit string encoding for large probes`() {
+        val large = probes.last().toBitSet()
+
+        assertTrue(large.toBase64String().length * 5 < large.toBitString().length)
+    }
+}
@@ -18,3 +18,12 @@ package com.epam.drill.agent.test2code.common.api
 import java.util.*
 
 actual typealias Probes = BitSet
+
+internal actual fun Probes.toBytes(): ByteArray = toByteArray()
+
+internal actual fun probesOf(bytes: ByteArray): Probes = BitSet.valueOf(bytes)
+
+@PublishedApi
+internal actual fun encodeBase64(bytes: ByteArray): String = Base64.getEncoder().encodeToString(bytes)
+
+internal actual fun decodeBase64(string: String): ByteArray = Base64.getDecoder().decode(string)
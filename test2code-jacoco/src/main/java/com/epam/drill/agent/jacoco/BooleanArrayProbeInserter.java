@@ -31,8 +31,15 @@ public class BooleanArrayProbeInserter extends MethodVisitor {
 
     public final static String PROBE_IMPL = AgentProbes.class.getCanonicalName().replace(".", "/");
 
+    public final static String PACKED_PROBE_IMPL = PackedAgentProbes.class.getCanonicalName().replace(".", "/");
+
     private final IProbeArrayStrategy arrayStrategy;
 
+    /**
+     * Internal name of the probes class which is stored in the inserted variable.
+     */
+    private final String probeImpl;
+
     /**
      * <code>true</code> if method is a class or interface initialization
      * method.
@@ -61,7 +68,26 @@ public class BooleanArrayProbeInserter extends MethodVisitor {
      */
     public BooleanArrayProbeInserter(final int access, final String name, final String desc,
                                      final MethodVisitor mv, final IProbeArrayStrategy arrayStrategy) {
+        this(access, name, desc, mv, arrayStrategy, PROBE_IMPL);
+    }
+
+    /**
+     * Creates a new {@link BooleanArrayProbeInserter} for the given probes class.
+     *
+     * @param access        access flags of the adapted method
+     * @param name          the method's name
+     * @param desc          the method's descriptor
+     * @param mv            the method visitor to which this adapter delegates calls
+     * @param arrayStrategy callback to create the code that retrieves the reference to
+     *                      the probes, it must store an instance of <code>probeImpl</code>
+     * @param probeImpl     internal name of the probes class, {@link #PROBE_IMPL} or
+     *                      {@link #PACKED_PROBE_IMPL}
+     */
+    public BooleanArrayProbeInserter(final int access, final String name, final String desc,
+                                     final MethodVisitor mv, final IProbeArrayStrategy arrayStrategy,
+                                     final String probeImpl) {
         super(InstrSupport.ASM_API_VERSION, mv);
+        this.probeImpl = probeImpl;
         //todo use const:
 //		this.clinit = InstrSupport.CLINIT_NAME.equals(name);
         this.clinit = "<clinit>".equals(name);
@@ -89,7 +115,7 @@ public class BooleanArrayProbeInserter extends MethodVisitor {
 //		mv.visitInsn(Opcodes.ICONST_1);
 
         visitMethodInsn(
-                Opcodes.INVOKEVIRTUAL, PROBE_IMPL, "set", "(I)V",
+                Opcodes.INVOKEVIRTUAL, probeImpl, "set", "(I)V",
                 false
         );
     }
@@ -172,7 +198,7 @@ public class BooleanArrayProbeInserter extends MethodVisitor {
         while (idx < nLocal || pos <= variable) {
             if (pos == variable) {
 //				newLocal[newIdx++] = InstrSupport.DATAFIELD_DESC;
-                newLocal[newIdx++] = PROBE_IMPL;
+                newLocal[newIdx++] = probeImpl;
                 //TODO InstrSupport change value of constants to bitSet:
 //				InstrSupport.DATAFIELD_DESC;
 //  			InstrSupport.INITMETHOD_DESC
@@ -35,6 +35,8 @@ public class DrillClassProbesAdapter extends ClassVisitor
 
 	private final boolean trackFrames;
 
+	private final boolean methodEntryProbesOnly;
+
 	private int counter = 0;
 
 	private String name;
@@ -49,9 +51,27 @@ public class DrillClassProbesAdapter extends ClassVisitor
 	 */
 	public DrillClassProbesAdapter(final ClassProbesVisitor cv,
 								   final boolean trackFrames) {
+		this(cv, trackFrames, false);
+	}
+
+	/**
+	 * Creates a new adapter that delegates to the given visitor.
+	 *
+	 * @param cv
+	 *            instance to delegate to
+	 * @param trackFrames
+	 *            if <code>true</code> stackmap frames are tracked and provided
+	 * @param methodEntryProbesOnly
+	 *            if <code>true</code> only a single probe at the entry of
+	 *            each method is provided, see {@link MethodEntryProbesAdapter}
+	 */
+	public DrillClassProbesAdapter(final ClassProbesVisitor cv,
+								   final boolean trackFrames,
+								   final boolean methodEntryProbesOnly) {
 		super(InstrSupport.ASM_API_VERSION, cv);
 		this.cv = cv;
 		this.trackFrames = trackFrames;
+		this.methodEntryProbesOnly = methodEntryProbesOnly;
 	}
 
 	@Override
@@ -82,6 +102,11 @@ public class DrillClassProbesAdapter extends ClassVisitor
 			@Override
 			public void visitEnd() {
 				super.visitEnd();
+				if (methodEntryProbesOnly) {
+					methodProbes.accept(this, new MethodEntryProbesAdapter(
+							methodProbes, DrillClassProbesAdapter.this));
+					return;
+				}
 				LabelFlowAnalyzer.markLabels(this);
 				final MethodProbesAdapter probesAdapter = new MethodProbesAdapter(
 						methodProbes, DrillClassProbesAdapter.this);
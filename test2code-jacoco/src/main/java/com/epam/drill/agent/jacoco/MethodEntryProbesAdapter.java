@@ -0,0 +1,55 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.jacoco;
+
+import org.jacoco.core.internal.flow.IProbeIdGenerator;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * Adapter that creates a single probe event at the entry of a method, so the
+ * probe only tells whether the method has been executed. Methods without code
+ * get no probes.
+ */
+public final class MethodEntryProbesAdapter extends MethodVisitor {
+
+	private final MethodProbesVisitor probesVisitor;
+
+	private final IProbeIdGenerator idGenerator;
+
+	/**
+	 * Create a new adapter instance.
+	 *
+	 * @param probesVisitor
+	 *            visitor to delegate to
+	 * @param idGenerator
+	 *            generator for unique probe ids
+	 */
+	public MethodEntryProbesAdapter(final MethodProbesVisitor probesVisitor,
+			final IProbeIdGenerator idGenerator) {
+		super(InstrSupport.ASM_API_VERSION, probesVisitor);
+		this.probesVisitor = probesVisitor;
+		this.idGenerator = idGenerator;
+	}
+
+	@Override
+	public void visitCode() {
+		probesVisitor.visitCode();
+		probesVisitor.visitProbe(idGenerator.nextId());
+	}
+
+}
@@ -15,30 +15,116 @@
  */
 package com.epam.drill.agent.jacoco
 
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Tracker of probes which have been hit since they were last read
+ */
+interface DirtyProbesTracker {
+    /**
+     * Called when probes are hit for the first time after [AgentProbes.clearDirty]
+     * @param classId the class id the probes have been created with
+     */
+    fun markDirty(classId: Long)
+}
+
+/**
+ * Probes of a single class, one boolean per probe.
+ * Instrumented code calls [set] on every probe hit, so implementations must keep it cheap.
+ *
+ * If [tracker] is set, it's notified with [classId] when probes are hit for the first time after [clearDirty].
+ */
 open class AgentProbes(
     initialSize: Int = 0,
     val values: BooleanArray = BooleanArray(initialSize),
+    private val classId: Long = 0,
+    private val tracker: DirtyProbesTracker? = null,
 ) {
 
+    open val size: Int
+        get() = values.size
+
+    /**
+     * Whether probes have been hit since the last [clearDirty].
+     * New probes are considered dirty, so their owner is expected to pick them up without notification.
+     *
+     * Both [markDirty] and [clearDirty] swap the flag atomically: either the hit sees the cleared flag
+     * and notifies [tracker], or [clearDirty] sees the flag set by the hit and the probe store happens-before
+     * the following reading of probes. A plain read of the flag after the probe store would allow
+     * the reader to clear the flag and miss the hit, which then would never be reported.
+     */
+    private val dirty = AtomicBoolean(true)
+
     open fun set(index: Int) {
-        if (!values[index])
+        if (!values[index]) {
             values[index] = true
+            markDirty()
+        }
     }
 
-    fun get(index: Int): Boolean {
+    /**
+     * Reset the dirty flag, so that the next first hit of a probe notifies [tracker] again.
+     * Must be called before reading probes to not lose hits made during reading.
+     */
+    fun clearDirty() {
+        dirty.getAndSet(false)
+    }
+
+    /**
+     * Must be called after storing a newly hit probe
+     */
+    protected fun markDirty() {
+        if (!dirty.getAndSet(true)) tracker?.markDirty(classId)
+    }
+
+    open fun get(index: Int): Boolean {
         return values[index]
     }
 
-    fun reset() {
+    open fun reset() {
         (values.indices).forEach {
             values[it] = false
         }
     }
 
-    fun containCovered() = values.any { it }
+    open fun containCovered() = values.any { it }
+
+    /**
+     * Check whether probes in the range contain covered ones
+     * @param fromIndex the start of the range (inclusive)
+     * @param toIndex the end of the range (exclusive)
+     */
+    open fun containCovered(fromIndex: Int, toIndex: Int): Boolean {
+        for (i in fromIndex until toIndex) {
+            if (values[i]) return true
+        }
+        return false
+    }
+
+    /**
+     * Set probes that are covered in other probes of the same class
+     * @param other the other probes
+     */
+    fun merge(other: AgentProbes) {
+        for (i in 0 until minOf(size, other.size)) {
+            if (other.get(i)) set(i)
+        }
+    }
+
+    /**
+     * Get a view of probes in the range without copying them
+     * @param offset the start of the range
+     * @param length the length of the range
+     */
+    fun slice(offset: Int, length: Int) = AgentProbesSlice(this, offset, length)
+
+    /**
+     * @return a snapshot of the probes
+     */
+    open fun copy(): AgentProbes = AgentProbes(values = values.copyOf())
 
     override fun equals(other: Any?): Boolean {
-        return other is AgentProbes && values.contentEquals(other.values)
+        return other is AgentProbes && other !is PackedAgentProbes && values.contentEquals(other.values)
     }
 
     override fun hashCode(): Int {
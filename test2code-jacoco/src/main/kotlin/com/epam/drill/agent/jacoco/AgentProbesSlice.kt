@@ -0,0 +1,40 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.jacoco
+
+/**
+ * A view of a range of [AgentProbes], e.g. probes of a single method.
+ * Reads go straight to the backing probes, nothing is copied.
+ */
+class AgentProbesSlice(
+    val probes: AgentProbes,
+    val offset: Int,
+    val length: Int,
+) {
+
+    operator fun get(index: Int): Boolean = probes.get(offset + index)
+
+    fun isEmpty(): Boolean = !probes.containCovered(offset, offset + length)
+
+    /**
+     * Call [action] with the index of each covered probe, relative to the slice start
+     */
+    inline fun forEachCovered(action: (Int) -> Unit) {
+        for (i in 0 until length) {
+            if (probes.get(offset + i)) action(i)
+        }
+    }
+}
@@ -65,6 +65,10 @@ tasks {
     withType<KotlinCompile> {
         kotlinOptions.jvmTarget = "1.8"
     }
+    withType<Test> {
+        // benchmarks are skipped unless they are requested by -Ddrill.benchmarks=true
+        System.getProperty("drill.benchmarks")?.let { systemProperty("drill.benchmarks", it) }
+    }
 }
 
 noArg {
@@ -15,6 +15,7 @@
  */
 package com.epam.drill.agent.test2code
 
+import java.io.File
 import kotlin.concurrent.thread
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.runBlocking
@@ -27,18 +28,25 @@ import com.epam.drill.agent.common.module.Instrumenter
 import com.epam.drill.agent.common.request.RequestProcessor
 import com.epam.drill.agent.common.transport.AgentMessageDestination
 import com.epam.drill.agent.common.transport.AgentMessageSender
+import com.epam.drill.agent.common.classloading.ClassSource
 import com.epam.drill.agent.common.classloading.EntitySource
 import com.epam.drill.agent.configuration.AgentParametersValidator
 import com.epam.drill.agent.configuration.CapabilityParameterDefinitions.CLASS_SCANNING_ENABLED
 import com.epam.drill.agent.configuration.CapabilityParameterDefinitions.COVERAGE_COLLECTION_ENABLED
 import com.epam.drill.agent.test2code.common.api.AstMethod
+import com.epam.drill.agent.test2code.common.api.ProbesEncoding
 import com.epam.drill.agent.test2code.common.transport.BuildFinalizePayload
 import com.epam.drill.agent.test2code.common.transport.ClassMetadata
 import com.epam.drill.agent.test2code.classloading.ClassLoadersScanner
 import com.epam.drill.agent.test2code.classloading.ClassScanner
+import com.epam.drill.agent.test2code.classloading.LoadedClassScanner
+import com.epam.drill.agent.test2code.classloading.ParsedClassSource
+import com.epam.drill.agent.test2code.classloading.ScanIndex
 import com.epam.drill.agent.test2code.classparsing.CumulativeChecksumCalculator
+import com.epam.drill.agent.test2code.classparsing.ParallelClassParser
 import com.epam.drill.agent.test2code.classparsing.parseAstClass
 import com.epam.drill.agent.test2code.configuration.Test2CodeParameterDefinitions
+import com.epam.drill.agent.common.classloading.ClassRetransformation
 import com.epam.drill.agent.common.lifecycle.AgentShutdownRegistry
 import com.epam.drill.agent.test2code.coverage.*
 
@@ -59,7 +67,24 @@ class Test2Code(
     internal val json = Json { encodeDefaults = true }
 
     private val coverageManager = DrillCoverageManager
-    private val instrumenter = DrillInstrumenter(coverageManager)
+    private val coverageMode = getCoverageMode()
+    private val ambientOnly = coverageMode == CoverageMode.AMBIENT_ONLY
+    private val lazyInstrumentation = isLazyInstrumentation()
+    // static probes add members to classes, which is not allowed on retransformation
+    private val staticProbes = ambientOnly && !lazyInstrumentation
+    private val methodEntryProbesOnly = isMethodEntryProbesOnly()
+    private val checksumExecutor = ChecksumExecutor()
+        .takeIf { configuration.parameters[Test2CodeParameterDefinitions.ASYNC_METHOD_CHECKSUMS] }
+    private val instrumenter = DrillInstrumenter(
+        coverageManager,
+        isPackedProbes(),
+        cache = openInstrumentationCache(),
+        staticProbes = staticProbes,
+        methodEntryProbesOnly = methodEntryProbesOnly,
+        checksumExecutor = checksumExecutor
+    ).let { instrumenter ->
+        if (lazyInstrumentation) LazyInstrumentation(instrumenter, ClassRetransformation::retransform) else instrumenter
+    }
     private val coverageSender: CoverageSender = IntervalCoverageSender(
         groupId = configuration.agentMetadata.groupId,
         appId = configuration.agentMetadata.appId,
@@ -71,18 +96,40 @@ class Test2Code(
         sender = sender,
         collectReleasedProbes = { coverageManager.pollRecorded() },
         collectUnreleasedProbes = { coverageManager.getUnreleased() },
-        classMethodsMetadata = coverageManager.classMethodsMetadata
+        classMethodsMetadata = coverageManager.classMethodsMetadata,
+        sentProbes = if (isDeltaCoverage()) SentProbes() else null,
+        awaitClassMethodsMetadata = { timeoutMs -> checksumExecutor?.await(timeoutMs) ?: true },
+        probesEncoding = getProbesEncoding()
     )
     private val coverageCollectionEnabled = configuration.parameters[COVERAGE_COLLECTION_ENABLED]
     private val classScanningEnabled = configuration.parameters[CLASS_SCANNING_ENABLED]
+    private val excludeMethodsByAnnotationPackage =
+        configuration.parameters[Test2CodeParameterDefinitions.EXCLUDE_METHODS_BY_ANNOTATION_PACKAGE] as List<String>
+    private val loadedClassScanner = takeIf { classScanningEnabled && isLoadedClassesScanning() }?.let {
+        LoadedClassScanner(
+            configuration.agentMetadata.packagesPrefixes,
+            50,
+            configuration.parameters[Test2CodeParameterDefinitions.SCAN_LOADED_CLASSES_INTERVAL],
+            ::sendLoadedClassesMetadata
+        )
+    }
+
+    init {
+        configureExecDataPool()
+        coverageManager.configureCoverageMode(coverageMode)
+    }
 
     override fun onConnect() {}
 
     override fun instrument(
         className: String,
         initialBytes: ByteArray,
-    ): ByteArray? = takeIf { coverageCollectionEnabled }?.let {
-        instrumenter.instrument(className, initialBytes)
+    ): ByteArray? {
+        loadedClassScanner?.scan(className, initialBytes)
+        if (loadedClassScanner?.isScanOnly(className) == true) return null
+        return takeIf { coverageCollectionEnabled }?.let {
+            instrumenter.instrument(className, initialBytes)
+        }
     }
 
     override fun load() {
@@ -90,13 +137,16 @@ class Test2Code(
             Test2CodeParameterDefinitions.SCAN_CLASS_PATH,
             Test2CodeParameterDefinitions.SCAN_CLASS_DELAY
         )
-        thread {
+        if (loadedClassScanner != null) {
+            scanLoadedClasses(loadedClassScanner)
+        } else thread {
             scanAndSendMetadataClasses()
         }
         if (coverageCollectionEnabled) {
             coverageSender.startSendingCoverage()
             AgentShutdownRegistry.register("coverage-sender") { remainingMs ->
                 coverageSender.stopSendingCoverage(remainingMs)
+                logger.info { "Released coverage pool metrics: ${drillExecDataPool.metrics()}" }
             }
         } else {
             logger.info { "Coverage collection is disabled" }
@@ -109,9 +159,15 @@ class Test2Code(
      * @features Running tests
      */
     override fun processServerRequest() {
+        if (ambientOnly) {
+            // test contexts are ignored, so ambient coverage of any request activates lazy instrumentation
+            activateLazyInstrumentation()
+            return
+        }
         val sessionId = context()
         val testId = context[DRILL_TEST_ID_HEADER]
         if (sessionId == null && testId == null) return
+        activateLazyInstrumentation()
         coverageManager.startRecording(sessionId, testId)
     }
 
@@ -120,13 +176,28 @@ class Test2Code(
      * @features Running tests
      */
     override fun processServerResponse() {
+        if (ambientOnly) return
         val sessionId = context()
         val testId = context[DRILL_TEST_ID_HEADER]
         if (sessionId == null && testId == null) return
         coverageManager.stopRecording(sessionId, testId)
     }
 
-    override fun scanClasses(consumer: (Set<EntitySource>) -> Unit) {
+    /**
+     * Instrument classes loaded uninstrumented so far if lazy instrumentation is enabled
+     * @features Running tests
+     */
+    fun activateLazyInstrumentation() {
+        (instrumenter as? LazyInstrumentation)?.activate()
+    }
+
+    override fun scanClasses(consumer: (Set<EntitySource>) -> Unit) = scanClasses(null, null, consumer)
+
+    private fun scanClasses(
+        scanIndex: ScanIndex?,
+        parse: ((ClassSource) -> EntitySource)?,
+        consumer: (Set<EntitySource>) -> Unit
+    ) {
         val packagePrefixes = configuration.agentMetadata.packagesPrefixes
         val scanClassPaths = configuration.parameters[Test2CodeParameterDefinitions.SCAN_CLASS_PATH] as List<String>
         val enableScanClassLoaders = configuration.parameters[Test2CodeParameterDefinitions.ENABLE_SCAN_CLASS_LOADERS]
@@ -141,10 +212,121 @@ class Test2Code(
             50,
             scanClassPaths,
             enableScanClassLoaders,
+            configuration.parameters[Test2CodeParameterDefinitions.SCAN_CLASS_THREADS],
+            isCentralDirectoryReading(),
+            scanIndex,
+            parse,
             consumer
         ).scanClasses()
     }
 
+    private fun configureExecDataPool() {
+        val overflowPolicy = configuration.parameters[Test2CodeParameterDefinitions.RELEASED_COVERAGE_OVERFLOW_POLICY]
+        drillExecDataPool.configure(
+            maxReleasedCount = configuration.parameters[Test2CodeParameterDefinitions.RELEASED_COVERAGE_MAX_COUNT],
+            maxReleasedBytes = configuration.parameters[Test2CodeParameterDefinitions.RELEASED_COVERAGE_MAX_BYTES],
+            overflowPolicy = OverflowPolicy.values().find { it.name == overflowPolicy.uppercase() }
+                ?: OverflowPolicy.MERGE_INTO_AMBIENT.also {
+                    logger.warn { "Unknown released coverage overflow policy: $overflowPolicy. Falling back to MERGE_INTO_AMBIENT." }
+                },
+            blockTimeoutMs = configuration.parameters[Test2CodeParameterDefinitions.COVERAGE_SEND_INTERVAL]
+        )
+    }
+
+    private fun isPackedProbes() = when (configuration.parameters[Test2CodeParameterDefinitions.PROBES_STORAGE].uppercase()) {
+        "PACKED" -> true
+        "BOOLEAN_ARRAY" -> false
+        else -> false.also {
+            logger.warn {
+                "Unknown probes storage: ${configuration.parameters[Test2CodeParameterDefinitions.PROBES_STORAGE]}. " +
+                        "Falling back to BOOLEAN_ARRAY storage."
+            }
+        }
+    }
+
+    private fun isCentralDirectoryReading() = when (configuration.parameters[Test2CodeParameterDefinitions.SCAN_ARCHIVE_READER].uppercase()) {
+        "CENTRAL_DIRECTORY" -> true
+        "STREAM" -> false
+        else -> true.also {
+            logger.warn {
+                "Unknown scan archive reader: ${configuration.parameters[Test2CodeParameterDefinitions.SCAN_ARCHIVE_READER]}. " +
+                        "Falling back to CENTRAL_DIRECTORY reader."
+            }
+        }
+    }
+
+    private fun isLoadedClassesScanning() = when (configuration.parameters[Test2CodeParameterDefinitions.SCAN_CLASS_SOURCE].uppercase()) {
+        "LOADED_CLASSES" -> true
+        "CLASS_PATH" -> false
+        else -> false.also {
+            logger.warn {
+                "Unknown scan class source: ${configuration.parameters[Test2CodeParameterDefinitions.SCAN_CLASS_SOURCE]}. " +
+                        "Falling back to CLASS_PATH source."
+            }
+        }
+    }
+
+    private fun isMethodEntryProbesOnly() = when (configuration.parameters[Test2CodeParameterDefinitions.PROBES_GRANULARITY].uppercase()) {
+        "METHOD" -> true
+        "BRANCH" -> false
+        else -> false.also {
+            logger.warn {
+                "Unknown probes granularity: ${configuration.parameters[Test2CodeParameterDefinitions.PROBES_GRANULARITY]}. " +
+                        "Falling back to BRANCH granularity."
+            }
+        }
+    }
+
+    private fun isLazyInstrumentation(): Boolean {
+        if (!configuration.parameters[Test2CodeParameterDefinitions.LAZY_INSTRUMENTATION]) return false
+        if (ClassRetransformation.isAvailable()) return true
+        logger.warn { "Class retransformation is not supported, lazy instrumentation is disabled" }
+        return false
+    }
+
+    private fun getCoverageMode() = configuration.parameters[Test2CodeParameterDefinitions.COVERAGE_MODE].let { mode ->
+        CoverageMode.values().find { it.name == mode.uppercase() } ?: CoverageMode.PER_TEST.also {
+            logger.warn { "Unknown coverage mode: $mode. Falling back to PER_TEST mode." }
+        }
+    }
+
+    private fun openInstrumentationCache(): InstrumentationCache? {
+        val dir = configuration.parameters[Test2CodeParameterDefinitions.INSTRUMENTATION_CACHE_DIR]
+        if (dir.isBlank()) return null
+        val key = "${instrumenterVersion()}:${coverageManager.javaClass.name}:packed=${isPackedProbes()}:static=$staticProbes:methodEntry=$methodEntryProbesOnly"
+        return InstrumentationCache.open(
+            File(dir),
+            key,
+            configuration.parameters[Test2CodeParameterDefinitions.INSTRUMENTATION_CACHE_MAX_SIZE]
+        )?.also { cache ->
+            AgentShutdownRegistry.register("instrumentation-cache") { remainingMs -> cache.close(remainingMs) }
+        }
+    }
+
+    private fun openScanIndex(): ScanIndex? {
+        val dir = configuration.parameters[Test2CodeParameterDefinitions.SCAN_INDEX_DIR]
+        if (dir.isBlank()) return null
+        val key = "${instrumenterVersion()}:${configuration.agentMetadata.packagesPrefixes}:methodEntry=$methodEntryProbesOnly"
+        return ScanIndex.open(File(dir), key)
+    }
+
+    private fun isDeltaCoverage() = when (configuration.parameters[Test2CodeParameterDefinitions.COVERAGE_WIRE_FORMAT].uppercase()) {
+        "DELTA" -> true
+        "FULL" -> false
+        else -> false.also {
+            logger.warn {
+                "Unknown coverage wire format: ${configuration.parameters[Test2CodeParameterDefinitions.COVERAGE_WIRE_FORMAT]}. " +
+                        "Falling back to FULL format."
+            }
+        }
+    }
+
+    private fun getProbesEncoding() = configuration.parameters[Test2CodeParameterDefinitions.PROBES_ENCODING].let { encoding ->
+        ProbesEncoding.values().find { it.name == encoding.uppercase() } ?: ProbesEncoding.BIT_STRING.also {
+            logger.warn { "Unknown probes encoding: $encoding. Falling back to BIT_STRING encoding." }
+        }
+    }
+
     /**
      * Scan, parse and send metadata classes to the admin side
      */
@@ -157,26 +339,32 @@ class Test2Code(
         var totalMethodsCount = 0
         val checksumCalculator = CumulativeChecksumCalculator()
 
-        val excludeMethodsByAnnotationPackage =
-            configuration.parameters[Test2CodeParameterDefinitions.EXCLUDE_METHODS_BY_ANNOTATION_PACKAGE]  as List<String>
-        val hasAnnotationsExclusions = excludeMethodsByAnnotationPackage.isNotEmpty()
-
-        scanClasses { classes ->
-            classes
-                .also { classCount += it.size }
+        val scanIndex = openScanIndex()
+        val parseMethods: (EntitySource) -> List<AstMethod> = { entity ->
+            parseAstClass(entity.entityName(), entity.bytes(), methodEntryProbesOnly)
+        }
+        // classes are reported to the scan index only after duplicates are skipped by the scanner
+        val parser = ParallelClassParser(
+            threads = configuration.parameters[Test2CodeParameterDefinitions.SCAN_CLASS_THREADS],
+            parse = { entity ->
+                (entity as? ParsedClassSource)?.methods
+                    ?: parseMethods(entity).also { scanIndex?.addParsed(entity.entityName(), it) }
+            }
+        ) { methods ->
+            methods
                 .asSequence()
-                .flatMap { parseAstClass(it.entityName(), it.bytes()).asSequence() }
                 .onEach { totalMethodsCount++ }
-                .filter { method ->
-                    !hasAnnotationsExclusions ||
-                            method.annotations?.keys?.none { key ->
-                                excludeMethodsByAnnotationPackage.any { key.contains(it) }
-                            } ?: false
-                }
+                .filter(::isNotExcludedByAnnotations)
                 .onEach(checksumCalculator::add)
                 .chunkedLazy(configuration.parameters[Test2CodeParameterDefinitions.METHODS_SEND_PAGE_SIZE])
                 .forEach(::sendClassMetadata)
         }
+        scanClasses(scanIndex, { ParsedClassSource(it.entityName(), parseMethods(it)) }) { classes ->
+            classCount += classes.size
+            parser.submit(classes)
+        }
+        parser.finish()
+        scanIndex?.close()
         sendBuildFinalize(checksumCalculator)
         logger.info { """Scanned $classCount classes with ${checksumCalculator.methodsCount} methods
             | methods checksum: ${checksumCalculator.methodsChecksum}
@@ -185,6 +373,47 @@ class Test2Code(
             | packages for annotations-based exclusion are specified in ${Test2CodeParameterDefinitions.EXCLUDE_METHODS_BY_ANNOTATION_PACKAGE.name} parameter """.trimMargin() }
     }
 
+    /**
+     * Scan classes loaded before the plugin, classes loaded afterward are scanned on their instrumentation
+     * and their metadata is sent to the admin side as they are loaded.
+     * Classes loaded before are retransformed only to be scanned, they are not instrumented,
+     * so retransformation works with static probes as well.
+     */
+    private fun scanLoadedClasses(scanner: LoadedClassScanner) {
+        logger.info { "Scanning loaded classes, package prefixes: ${configuration.agentMetadata.packagesPrefixes}..." }
+        if (!ClassRetransformation.isAvailable()) {
+            logger.warn { "Class retransformation is not supported, classes loaded before the agent are not scanned" }
+            return
+        }
+        thread(isDaemon = true, name = "drill-loaded-classes-retransformation") {
+            runCatching {
+                scanner.scanLoadedClasses(ClassRetransformation.loadedClassNames(), ClassRetransformation::retransform)
+            }.onSuccess {
+                logger.info { "Scanned $it classes loaded before the agent" }
+            }.onFailure {
+                logger.error(it) { "Can't scan classes loaded before the agent" }
+            }
+        }
+    }
+
+    private fun sendLoadedClassesMetadata(classes: Set<EntitySource>) = classes
+        .asSequence()
+        .flatMap { entity ->
+            runCatching {
+                parseAstClass(entity.entityName(), entity.bytes(), methodEntryProbesOnly)
+            }.onFailure {
+                logger.warn { "Can't parse class ${entity.entityName()}: ${it.message}" }
+            }.getOrDefault(emptyList())
+        }
+        .filter(::isNotExcludedByAnnotations)
+        .chunkedLazy(configuration.parameters[Test2CodeParameterDefinitions.METHODS_SEND_PAGE_SIZE])
+        .forEach(::sendClassMetadata)
+
+    private fun isNotExcludedByAnnotations(method: AstMethod) = excludeMethodsByAnnotationPackage.isEmpty() ||
+            method.annotations?.keys?.none { key ->
+                excludeMethodsByAnnotationPackage.any { key.contains(it) }
+            } ?: false
+
     private val classMetadataDestination = AgentMessageDestination("PUT", "methods")
     private val buildFinalizeDestination = AgentMessageDestination("PUT", "builds/finalize")
 
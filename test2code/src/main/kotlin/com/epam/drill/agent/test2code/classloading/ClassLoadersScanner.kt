@@ -19,15 +19,30 @@ import java.io.File
 import java.net.URI
 import java.net.URL
 import java.net.URLClassLoader
+import java.util.concurrent.ForkJoinPool
 import mu.KotlinLogging
 import com.epam.drill.agent.common.classloading.ClassSource
+import com.epam.drill.agent.common.classloading.EntitySource
 
+/**
+ * Scanner of classes from class paths of application class loaders.
+ *
+ * If [scanThreads] is more than 1, archives are scanned in parallel by a fork-join pool of that size.
+ * If [readCentralDirectory] is true, archives are read via their central directories instead of streams.
+ * If [scanIndex] is set, unchanged archive files are taken from it instead of reading them.
+ * If [parse] is set, classes found by fork-join pool threads are parsed by them right away.
+ * See [ClassPathScanner].
+ */
 class ClassLoadersScanner(
-    packagePrefixes: List<String>,
-    classesBufferSize: Int,
+    private val packagePrefixes: List<String>,
+    private val classesBufferSize: Int,
     scanClassPaths: List<String> = emptyList(),
     private val enableScanClassLoaders: Boolean = true,
-    transfer: (Set<ClassSource>) -> Unit
+    private val scanThreads: Int = 1,
+    private val readCentralDirectory: Boolean = false,
+    private val scanIndex: ScanIndex? = null,
+    private val parse: ((ClassSource) -> EntitySource)? = null,
+    private val transfer: (Set<EntitySource>) -> Unit
 ) {
 
     private val logger = KotlinLogging.logger {}
@@ -36,7 +51,6 @@ class ClassLoadersScanner(
     private val excludePaths: List<URI> = scanClassPaths.filter { it.startsWith("!") }
         .map { it.substring(1) }
         .map(::File).map(File::toURI)
-    private val classPathScanner = ClassPathScanner(packagePrefixes, classesBufferSize, excludePaths, transfer)
 
     private val getOrLogFail: Result<URI>.() -> URI? = {
         this.onFailure { logger.warn { "ClassLoadersScanner: error handling classpath URI: ${it.message}" } }
@@ -85,8 +99,27 @@ class ClassLoadersScanner(
      * @param uris set of URI to scan
      * @return scanned classes count
      */
-    private fun scanClasses(uris: Set<URI>) =
-        uris.fold(0, ::addClasses).apply { classPathScanner.transferBuffer() }
+    private fun scanClasses(uris: Set<URI>): Int {
+        val executor = scanThreads.takeIf { it > 1 }?.let(::ForkJoinPool)
+        val classPathScanner = ClassPathScanner(
+            packagePrefixes,
+            classesBufferSize,
+            excludePaths,
+            executor,
+            maxPendingArchives = scanThreads * 4,
+            readCentralDirectory = readCentralDirectory,
+            scanIndex = scanIndex,
+            parse = parse,
+            transfer = transfer
+        )
+        try {
+            uris.forEach(classPathScanner::scanURI)
+            classPathScanner.transferBuffer()
+        } finally {
+            executor?.shutdownNow()
+        }
+        return classPathScanner.scannedClassesCount
+    }
 
     /**
      * Get classloader with parent classloaders and add them to accumulating set.
@@ -127,15 +160,6 @@ class ClassLoadersScanner(
         }
     }
 
-    /**
-     * Scan class from given URI and return scanned classes count.
-     *
-     * @param count accumulating count of scanned classes
-     * @param uri URI to scan
-     * @return accumulating count of classes increased on scanned classes count
-     */
-    private fun addClasses(count: Int, uri: URI) = count + classPathScanner.scanURI(uri)
-
     /**
      * Get classpath from java system property 'java.class.path'.
      *
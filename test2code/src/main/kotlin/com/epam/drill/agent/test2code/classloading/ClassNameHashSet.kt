@@ -0,0 +1,94 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+private const val INITIAL_CAPACITY = 1024
+private const val FNV_OFFSET_BASIS = -0x340d631b7bdddcdbL
+private const val FNV_PRIME = 0x100000001b3L
+
+/**
+ * Set of class names kept as 64-bit name hashes in an open-addressing table,
+ * so names themselves are not retained.
+ *
+ * Different names with the same hash are considered equal, which is negligible for 64-bit hashes.
+ * Not thread-safe.
+ */
+class ClassNameHashSet {
+    private var table = LongArray(INITIAL_CAPACITY)
+    private var hasZero = false
+
+    var size = 0
+        private set
+
+    /**
+     * Add the class name
+     * @param name the class name
+     * @return true if the name has not been added before
+     */
+    fun add(name: String): Boolean {
+        val hash = hash(name)
+        if (hash == 0L) {
+            if (hasZero) return false
+            hasZero = true
+            size++
+            return true
+        }
+        if ((size + 1) * 2 > table.size) rehash()
+        return insert(table, hash).also { if (it) size++ }
+    }
+
+    /**
+     * Check whether the class name has been added
+     * @param name the class name
+     * @return true if the name has been added before
+     */
+    operator fun contains(name: String): Boolean {
+        val hash = hash(name)
+        if (hash == 0L) return hasZero
+        val mask = table.size - 1
+        var index = (hash xor (hash ushr 32)).toInt() and mask
+        while (table[index] != 0L) {
+            if (table[index] == hash) return true
+            index = (index + 1) and mask
+        }
+        return false
+    }
+
+    private fun insert(table: LongArray, hash: Long): Boolean {
+        val mask = table.size - 1
+        var index = (hash xor (hash ushr 32)).toInt() and mask
+        while (table[index] != 0L) {
+            if (table[index] == hash) return false
+            index = (index + 1) and mask
+        }
+        table[index] = hash
+        return true
+    }
+
+    private fun rehash() {
+        val newTable = LongArray(table.size * 2)
+        table.forEach { if (it != 0L) insert(newTable, it) }
+        table = newTable
+    }
+
+    private fun hash(name: String): Long {
+        var hash = FNV_OFFSET_BASIS
+        for (char in name) {
+            hash = (hash xor char.code.toLong()) * FNV_PRIME
+        }
+        return hash
+    }
+}
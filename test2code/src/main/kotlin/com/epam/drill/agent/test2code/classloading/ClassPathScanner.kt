@@ -17,13 +17,26 @@ package com.epam.drill.agent.test2code.classloading
 
 import java.io.ByteArrayInputStream
 import java.io.File
+import java.io.FilterInputStream
+import java.io.InputStream
 import java.net.URI
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
 import java.util.jar.Attributes
 import java.util.jar.JarEntry
+import java.util.jar.JarFile
 import java.util.jar.JarInputStream
+import java.util.zip.ZipEntry
 import org.objectweb.asm.ClassReader
 import mu.KotlinLogging
 import com.epam.drill.agent.common.classloading.ClassSource
+import com.epam.drill.agent.common.classloading.EntitySource
 
 private const val PREFIX_SPRING_BOOT = "BOOT-INF/classes/"
 private const val PREFIX_WEB_APP = "WEB-INF/classes/"
@@ -31,111 +44,310 @@ private const val PREFIX_JAR = ".jar/"
 private const val PACKAGE_DRILL = "com/epam/drill/agent"
 private const val JAR_BUFFER_SIZE = 256 * 1024
 
+/**
+ * Scanner of classes from class path directories and archives.
+ *
+ * If [executor] is set, archives (including archives nested into other archives) are scanned by its threads,
+ * at most [maxPendingArchives] archives are scanned or waiting to be transferred at the same time.
+ * Scanned classes are transferred in the same order as on sequential scanning,
+ * so the same duplicate classes are skipped.
+ *
+ * If [readCentralDirectory] is true, archives are read via their central directories (see [ZipCentralDirectory])
+ * instead of streams, so only class entries matching package prefixes and nested archives are decompressed.
+ *
+ * If [scanIndex] is set, classes of archive files stored by previous scans are taken from it
+ * (as [ParsedClassSource]) instead of reading the archives, and classes of other archive files are reported to it
+ * while they are found, so each archive can be stored as soon as its classes are parsed.
+ *
+ * If [parse] is set, classes found by executor threads are parsed by them right away,
+ * so results of archives waiting to be transferred don't keep class bytes.
+ * Parsed classes which are not skipped as duplicates are reported to [scanIndex].
+ * Names of scanned classes are kept as hashes, see [ClassNameHashSet].
+ */
 class ClassPathScanner(
     private val packagePrefixes: List<String>,
     private val classesBufferSize: Int,
     private val excludePaths: List<URI> = emptyList(),
-    private val transfer: (Set<ClassSource>) -> Unit
+    private val executor: ExecutorService? = null,
+    maxPendingArchives: Int = 0,
+    private val readCentralDirectory: Boolean = false,
+    private val scanIndex: ScanIndex? = null,
+    private val parse: ((ClassSource) -> EntitySource)? = null,
+    private val transfer: (Set<EntitySource>) -> Unit
 ) {
 
     private val logger = KotlinLogging.logger {}
-    private val scannedJarFiles = mutableSetOf<String>()
-    private val scannedClasses = mutableSetOf<String>()
-    private val scannedBuffer = mutableSetOf<ClassSource>()
+    private val scannedJarFiles = ConcurrentHashMap.newKeySet<String>()
+    private val scannedClasses = ClassNameHashSet()
+    private val scannedBuffer = mutableSetOf<EntitySource>()
+    private val pendingResults = ArrayDeque<ScanResult>()
+    private val indexedArchives = ArrayDeque<IndexedArchive>()
+    private val archivePermits = Semaphore(maxPendingArchives)
 
-    private val getOrLogFail: Result<Int>.() -> Int = {
+    private val logFail: Result<*>.() -> Unit = {
         this.onFailure {
             logger.warn { "ClassPathScanner: error handling class file: ${it.message} ${it.stackTraceToString()}" }
         }
-        this.getOrDefault(0)
     }
 
+    /**
+     * Count of classes scanned so far.
+     */
+    val scannedClassesCount: Int
+        get() = scannedClasses.size
+
     /**
      * Transfer buffer of scanned classes using transfer function provided in constructor param.
+     * Archives which are still being scanned are waited for before.
      */
-    fun transferBuffer() = scannedBuffer.takeIf(Collection<ClassSource>::isNotEmpty)?.let(transfer)
+    fun transferBuffer() {
+        while (pendingResults.isNotEmpty()) consumeResult(pendingResults.removeFirst())
+        scannedBuffer.takeIf(Collection<EntitySource>::isNotEmpty)?.let(transfer)
+    }
 
     /**
      * Scan classes from URI.
+     * Archives may be scanned in background, see [transferBuffer].
      *
      * @param uri URI to scan
-     * @return scanned classes count
      */
-    fun scanURI(uri: URI) = File(uri).takeIf(File::exists)?.let(::scanFile) ?: 0
+    fun scanURI(uri: URI) {
+        while (archivePermits.availablePermits() == 0 && pendingResults.isNotEmpty())
+            consumeResult(pendingResults.removeFirst())
+        File(uri).takeIf(File::exists)?.let { scanFile(it, ::acceptResult) }
+    }
+
+    /**
+     * Accept scan result on the calling thread: consume it
+     * or keep the result until results found before are consumed.
+     *
+     * @param result scan result
+     */
+    private fun acceptResult(result: ScanResult) {
+        if (result !is ScanResult.Pending && pendingResults.isEmpty()) consumeResult(result)
+        else pendingResults.addLast(result)
+    }
+
+    /**
+     * Add classes of scan result to scanned waiting for archive scanning if necessary.
+     *
+     * @param result scan result
+     */
+    private fun consumeResult(result: ScanResult): Unit = when (result) {
+        is ScanResult.Found -> runCatching { addClassToScanned(result.classSource) }.logFail()
+        is ScanResult.Pending -> try {
+            result.results.runCatching { get() }
+                .onFailure { logger.warn { "ClassPathScanner: error scanning archive: ${it.message}" } }
+                .getOrDefault(emptyList())
+                .forEach(::consumeResult)
+        } finally {
+            archivePermits.release()
+        }
+        is ScanResult.ArchiveStarted -> indexedArchives.addLast(IndexedArchive(result.fingerprint, result.indexed))
+        is ScanResult.ArchiveScanned -> indexedArchives.removeLast().let { archive ->
+            // archives taken from the index are not reported to it again
+            if (!archive.indexed) scanIndex?.finishScanned(archive.fingerprint, result.succeeded && archive.complete)
+        }
+    }
+
+    /**
+     * Scan archive by executor thread if there are free permits or on the calling thread otherwise.
+     *
+     * @param sink function accepting scan results
+     * @param scan function scanning archive
+     */
+    private fun scanArchive(sink: (ScanResult) -> Unit, scan: ((ScanResult) -> Unit) -> Unit) {
+        if (acquireArchive()) forkArchive(sink, scan) else scan(sink)
+    }
+
+    private fun acquireArchive() = executor != null && archivePermits.tryAcquire()
+
+    /**
+     * Scan archive by executor thread, an archive permit must be acquired before.
+     *
+     * @param sink function accepting scan results
+     * @param scan function scanning archive
+     */
+    private fun forkArchive(sink: (ScanResult) -> Unit, scan: ((ScanResult) -> Unit) -> Unit) {
+        val parseFound: (ScanResult) -> ScanResult = { result ->
+            val classSource = (result as? ScanResult.Found)?.classSource as? ClassSource
+            if (parse != null && classSource != null) ScanResult.Found(parse.invoke(classSource)) else result
+        }
+        val task = Callable<List<ScanResult>> {
+            mutableListOf<ScanResult>().also { results -> scan { results.add(parseFound(it)) } }
+        }
+        sink(ScanResult.Pending(executor!!.submit(task)))
+    }
 
     /**
      * Scan classes from file (archive or directory).
      *
      * @param file file to scan
-     * @return scanned classes count
+     * @param sink function accepting scan results
      */
-    private fun scanFile(file: File) = when {
-        file.isDirectory -> scanDirectory(file)
-        !file.toURI().startsWithAnyOf(excludePaths) -> scanJarFile(file).getOrLogFail()
-        else -> 0
+    private fun scanFile(file: File, sink: (ScanResult) -> Unit) = when {
+        file.isDirectory -> scanDirectory(file, sink)
+        !file.toURI().startsWithAnyOf(excludePaths) -> scanJarFile(file, sink)
+        else -> Unit
     }
 
     /**
      * Scan classes from directory.
      *
      * @param file directory to scan
-     * @return scanned classes count
+     * @param sink function accepting scan results
      */
-    private fun scanDirectory(file: File) = file.run {
+    private fun scanDirectory(file: File, sink: (ScanResult) -> Unit) = file.run {
         val isClassFile: (File) -> Boolean = { it.isFile && it.extension == "class" }
         logger.debug { "scanDirectory: scanning directory: ${this.absolutePath}" }
         this.walkTopDown()
             .filter(isClassFile)
             .filter {
                 !it.toURI().startsWithAnyOf(excludePaths)
-            }.sumOf { scanClassFile(it, this).getOrLogFail() }
+            }.forEach { scanClassFile(it, this, sink).logFail() }
     }
 
     /**
      * Scan classes from archive file (JAR/WAR/RAR/EAR).
      *
      * @param file archive to scan
-     * @return scanned classes count
+     * @param sink function accepting scan results
      */
-    private fun scanJarFile(file: File): Result<Int> = file.runCatching {
-        val isNotScanned: (File) -> Boolean = { !scannedJarFiles.contains(it.absolutePath) }
+    private fun scanJarFile(file: File, sink: (ScanResult) -> Unit) {
         val fileToStream: (File) -> JarInputStream = { JarInputStream(it.inputStream().buffered(JAR_BUFFER_SIZE)) }
-        val pathToFile: (String) -> File? = { File(this.parent, it).takeIf(File::exists) }
-        var scanned = 0
-        logger.debug { "scanJarFile: scanning file: ${this.absolutePath}" }
-        this.takeIf(isNotScanned)?.let(fileToStream)?.use {
-            scanned += scanJarInputStream(it).also { scannedJarFiles.add(this.absolutePath) }
-            scanned += it.manifest?.mainAttributes?.getValue(Attributes.Name.CLASS_PATH)?.split(" ")
-                ?.mapNotNull(pathToFile)?.map(::scanJarFile)?.sumOf(getOrLogFail) ?: 0
+        val pathToFile: (String) -> File? = { File(file.parent, it).takeIf(File::exists) }
+        if (!scannedJarFiles.add(file.absolutePath)) return
+        scanArchive(sink) { out ->
+            val fingerprint = ArchiveFingerprint.of(file)
+            val indexedClasses = scanIndex?.get(fingerprint)
+            if (scanIndex != null) out(ScanResult.ArchiveStarted(fingerprint, indexedClasses != null))
+            val scanned = file.runCatching {
+                logger.debug { "scanJarFile: scanning file: ${this.absolutePath}" }
+                val classPath = when {
+                    indexedClasses != null -> readClassPath(this).also {
+                        logger.debug { "scanJarFile: ${indexedClasses.size} classes taken from scan index" }
+                        indexedClasses.forEach { out(ScanResult.Found(it)) }
+                    }
+                    readCentralDirectory -> scanZipFile(this, out)
+                    else -> this.let(fileToStream).use {
+                        scanJarInputStream(it, out)
+                        it.manifest?.mainAttributes?.getValue(Attributes.Name.CLASS_PATH)
+                    }
+                }
+                classPath?.split(" ")?.mapNotNull(pathToFile)?.forEach { jar -> scanJarFile(jar, out) }
+            }
+            scanned.logFail()
+            if (scanIndex != null) out(ScanResult.ArchiveScanned(scanned.isSuccess))
+        }
+    }
+
+    /**
+     * Read class path of archive manifest.
+     *
+     * @param file archive to read
+     * @return class path of the archive manifest
+     */
+    private fun readClassPath(file: File) = JarFile(file, false).use {
+        it.manifest?.mainAttributes?.getValue(Attributes.Name.CLASS_PATH)
+    }
+
+    /**
+     * Scan classes from archive file via its central directory.
+     *
+     * Stored (not compressed) archives packed into it, e.g. JARs in Spring Boot archives,
+     * are scanned in place from the memory-mapped file, other entries are read to heap.
+     *
+     * @param file archive to scan
+     * @param sink function accepting scan results
+     * @return class path of the archive manifest
+     */
+    private fun scanZipFile(file: File, sink: (ScanResult) -> Unit) = JarFile(file, false).use { jar ->
+        val readEntry: (ZipEntry) -> ByteArray = { jar.getInputStream(it).use(InputStream::readBytes) }
+        val storedArchives by lazy { mapStoredArchives(file) }
+        jar.entries().asSequence().filterNot(ZipEntry::isDirectory).forEach { entry ->
+            when (entry.name.substringAfterLast('.')) {
+                "jar", "war", "rar" -> scanNestedArchive(
+                    entry.name,
+                    entry.takeIf { it.method == ZipEntry.STORED }?.let { storedArchives[it.name] }
+                        ?: ByteBuffer.wrap(readEntry(entry)),
+                    sink
+                )
+                "class" -> scanClassEntry(entry.name, { readEntry(entry) }, sink).logFail()
+            }
+        }
+        jar.manifest?.mainAttributes?.getValue(Attributes.Name.CLASS_PATH)
+    }
+
+    /**
+     * Map archive file to memory and slice its stored archive entries.
+     * The mapping is released when the slices are garbage collected.
+     *
+     * @param file archive to map
+     * @return slices of stored archive entries by their names,
+     * empty if the archive can't be mapped or its central directory can't be read (e.g. ZIP64)
+     */
+    private fun mapStoredArchives(file: File): Map<String, ByteBuffer> = file.runCatching {
+        val archive = FileChannel.open(toPath(), StandardOpenOption.READ).use {
+            it.map(FileChannel.MapMode.READ_ONLY, 0, it.size())
         }
-        scanned
+        val directory = ZipCentralDirectory(archive)
+        directory.entries
+            .filter { it.method == ZipEntry.STORED && it.name.substringAfterLast('.') in setOf("jar", "war", "rar") }
+            .associate { it.name to directory.slice(it) }
+    }.getOrElse {
+        logger.debug { "mapStoredArchives: reading stored archives of ${file.absolutePath} to heap: ${it.message}" }
+        emptyMap()
     }
 
+    /**
+     * Scan archive packed in archive via its central directory,
+     * stored archives packed into it are scanned in place.
+     * Archives which central directory can't be read (e.g. ZIP64) are scanned as streams.
+     *
+     * @param name entry name of the archive
+     * @param archive buffer of the archive
+     * @param sink function accepting scan results
+     */
+    private fun scanNestedArchive(name: String, archive: ByteBuffer, sink: (ScanResult) -> Unit): Unit =
+        scanArchive(sink) { out ->
+            name.runCatching {
+                logger.debug { "scanNestedArchive: scanning archive entry: $this" }
+                val directory = runCatching { ZipCentralDirectory(archive) }.getOrElse {
+                    logger.debug { "scanNestedArchive: reading $name as stream: ${it.message}" }
+                    val bytes = ByteArray(archive.remaining()).also { archive.duplicate().get(it) }
+                    return@runCatching JarInputStream(ByteArrayInputStream(bytes)).use { scanJarInputStream(it, out) }
+                }
+                directory.entries.filterNot(ZipCentralDirectory.Entry::isDirectory).forEach { entry ->
+                    when (entry.name.substringAfterLast('.')) {
+                        "jar", "war", "rar" -> scanNestedArchive(entry.name, directory.slice(entry), out)
+                        "class" -> scanClassEntry(entry.name, { directory.read(entry) }, out).logFail()
+                    }
+                }
+            }.logFail()
+        }
+
     /**
      * Scan classes from archive stream.
      *
      * @param stream archive to scan
-     * @return scanned classes count
+     * @param sink function accepting scan results
      */
-    private fun scanJarInputStream(stream: JarInputStream) = stream.run {
-        var scanned = 0
+    private fun scanJarInputStream(stream: JarInputStream, sink: (ScanResult) -> Unit): Unit = stream.run {
         var jarEntry = this.nextJarEntry
         while (jarEntry != null) {
             when (jarEntry.takeUnless(JarEntry::isDirectory)?.name?.substringAfterLast('.')) {
-                "jar", "war", "rar" -> scanned += scanJarEntry(jarEntry, this.readBytes()).getOrLogFail()
-                "class" -> scanned += scanClassEntry(jarEntry, this.readBytes()).getOrLogFail()
+                "jar", "war", "rar" -> scanJarEntry(jarEntry, this, sink)
+                "class" -> scanClassEntry(jarEntry.name, { this.readBytes() }, sink).logFail()
             }
             jarEntry = this.nextJarEntry
         }
-        scanned
     }
 
     private val isPrefixMatches: (ClassSource) -> Boolean = { it.prefixMatches(packagePrefixes) }
     private val isClassAccepted: (ClassSource) -> Boolean = {
         !it.entityName().contains('$') &&
                 !it.entityName().startsWith(PACKAGE_DRILL) &&
-                it.prefixMatches(packagePrefixes) &&
-                !scannedClasses.contains(it.entityName())
+                it.prefixMatches(packagePrefixes)
     }
 
     /**
@@ -143,9 +355,9 @@ class ClassPathScanner(
      *
      * @param file file to scan
      * @param directory directory to calculate package (using relative path)
-     * @return 0 if skipped or 1 if class scanned
+     * @param sink function accepting scan results
      */
-    private fun scanClassFile(file: File, directory: File) = file.runCatching {
+    private fun scanClassFile(file: File, directory: File, sink: (ScanResult) -> Unit) = file.runCatching {
         val readClassSource: (ClassSource) -> ClassSource? = {
             val bytes = this.readBytes()
             val superName = ClassReader(bytes).superName ?: ""
@@ -162,19 +374,20 @@ class ClassPathScanner(
             .takeIf(isClassAccepted)
             ?.let(readClassSource)
             ?.takeIf(isPrefixMatches)
-            ?.let(::addClassToScanned)
-            ?: 0
+            ?.let { sink(ScanResult.Found(it)) }
+            ?: Unit
     }
 
     /**
-     * Scan class from JAR-archive entry.
+     * Scan class from JAR-archive entry, entry bytes are read only if the class name is accepted.
      *
-     * @param entry entry to scan
-     * @param bytes bytes from archive stream
-     * @return 0 if skipped or 1 if class scanned
+     * @param name entry name
+     * @param readBytes function reading entry bytes
+     * @param sink function accepting scan results
      */
-    private fun scanClassEntry(entry: JarEntry, bytes: ByteArray) = entry.name.runCatching {
+    private fun scanClassEntry(name: String, readBytes: () -> ByteArray, sink: (ScanResult) -> Unit) = name.runCatching {
         val readClassSource: (ClassSource) -> ClassSource? = {
+            val bytes = readBytes()
             val superName = ClassReader(bytes).superName ?: ""
             it.copy(superName = superName, bytes = bytes)
         }
@@ -184,34 +397,62 @@ class ClassPathScanner(
             .removeBefore(PREFIX_JAR)
             .removeSuffix(".class")
             .let(::ClassSource)
-            .takeIf(isClassAccepted)?.let(readClassSource)?.takeIf(isPrefixMatches)?.let(::addClassToScanned) ?: 0
+            .takeIf(isClassAccepted)?.let(readClassSource)?.takeIf(isPrefixMatches)
+            ?.let { sink(ScanResult.Found(it)) } ?: Unit
     }
 
     /**
      * Scan JAR-archive packed in JAR-archive.
+     * The archive is read into memory only if it is scanned by executor thread,
+     * otherwise it is scanned right from the archive stream.
      *
      * @param entry entry to scan
-     * @param bytes bytes from archive stream
-     * @return scanned classes count
+     * @param stream archive stream positioned at the entry
+     * @param sink function accepting scan results
      */
-    private fun scanJarEntry(entry: JarEntry, bytes: ByteArray): Result<Int> = entry.name.runCatching {
-        logger.debug { "scanJarEntry: scanning jar entry: $this" }
-        JarInputStream(ByteArrayInputStream(bytes)).use(::scanJarInputStream)
+    private fun scanJarEntry(entry: JarEntry, stream: JarInputStream, sink: (ScanResult) -> Unit) {
+        val scanBytes: (ByteArray, (ScanResult) -> Unit) -> Unit = { bytes, out ->
+            JarInputStream(ByteArrayInputStream(bytes)).use { scanJarInputStream(it, out) }
+        }
+        val scanStream: (InputStream, (ScanResult) -> Unit) -> Unit = { input, out ->
+            // the nested stream must not close the archive stream
+            JarInputStream(object : FilterInputStream(input) {
+                override fun close() = Unit
+            }).use { scanJarInputStream(it, out) }
+        }
+        if (acquireArchive()) {
+            val bytes = stream.readBytes()
+            forkArchive(sink) { out -> entry.name.scanNested { scanBytes(bytes, out) } }
+        } else {
+            entry.name.scanNested { scanStream(stream, sink) }
+        }
     }
 
+    private fun String.scanNested(scan: () -> Unit) = runCatching {
+        logger.debug { "scanJarEntry: scanning jar entry: $this" }
+        scan()
+    }.logFail()
+
     /**
      * Add class to scanned buffer and transfer it using transfer function provided in constructor param
-     * when transfer buffer exceed.
+     * when transfer buffer exceed. Classes with already scanned names are skipped.
      *
-     * @return always returns '1'
+     * Only classes which have not been parsed yet keep bytes in the buffer,
+     * so its size in bytes is bounded by [classesBufferSize] class files.
      */
-    private fun addClassToScanned(classSource: ClassSource): Int {
-        val isBufferFilled: (Set<ClassSource>) -> Boolean = { it.size >= classesBufferSize }
+    private fun addClassToScanned(classSource: EntitySource) {
+        val isBufferFilled: (Set<EntitySource>) -> Boolean = { it.size >= classesBufferSize }
+        val isNotScanned = scannedClasses.add(classSource.entityName())
+        indexedArchives.lastOrNull()?.takeUnless(IndexedArchive::indexed)?.run {
+            // an archive with skipped classes can't be restored from the index without classes found before it
+            if (isNotScanned) scanIndex?.addScanned(fingerprint, classSource.entityName()) else complete = false
+        }
+        if (!isNotScanned) return
+        // classes parsed by executor threads are reported only if they are not skipped as duplicates
+        (classSource as? ParsedClassSource)?.let { scanIndex?.addParsed(it.entityName(), it.methods) }
         logger.trace { "ClassPathScanner: found class: ${classSource.entityName()}" }
-        scannedClasses.add(classSource.entityName())
         scannedBuffer.add(classSource)
         scannedBuffer.takeIf(isBufferFilled)?.also(transfer)?.clear()
-        return 1
     }
 
     /**
@@ -227,4 +468,22 @@ class ClassPathScanner(
         return if (index != -1) substring(index + prefix.length) else this
     }
 
+    /**
+     * Result of scanning: a found class, pending results of an archive scanned in background
+     * or a boundary of archive file to be reported to [scanIndex].
+     */
+    private sealed class ScanResult {
+        class Found(val classSource: EntitySource) : ScanResult()
+        class Pending(val results: Future<List<ScanResult>>) : ScanResult()
+        class ArchiveStarted(val fingerprint: ArchiveFingerprint, val indexed: Boolean) : ScanResult()
+        class ArchiveScanned(val succeeded: Boolean) : ScanResult()
+    }
+
+    /**
+     * Archive file being scanned, its classes are reported to [scanIndex] unless they are taken from it.
+     */
+    private class IndexedArchive(val fingerprint: ArchiveFingerprint, val indexed: Boolean) {
+        var complete = true
+    }
+
 }
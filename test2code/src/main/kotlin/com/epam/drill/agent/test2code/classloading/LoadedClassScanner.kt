@@ -0,0 +1,145 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import org.objectweb.asm.ClassReader
+import mu.KotlinLogging
+import com.epam.drill.agent.common.classloading.ClassSource
+import com.epam.drill.agent.common.classloading.EntitySource
+
+private const val PACKAGE_DRILL = "com/epam/drill/agent"
+private const val RETRANSFORM_BATCH_SIZE = 100
+
+/**
+ * Scanner of classes loaded by the JVM.
+ *
+ * Classes are scanned from bytes passed to [scan] on their loading, so class paths are not read again.
+ * Classes loaded before the scanner are scanned via [scanLoadedClasses]: they are retransformed,
+ * so their bytes are passed to [scan] as well. Such retransformations are only for scanning,
+ * classes being retransformed must not be instrumented, see [isScanOnly].
+ *
+ * Scanned classes are transferred on a background thread in buffers of [classesBufferSize] classes,
+ * a buffer which is not full yet is transferred every [transferIntervalMs].
+ * Names of scanned classes are kept as hashes, see [ClassNameHashSet].
+ */
+class LoadedClassScanner(
+    private val packagePrefixes: List<String>,
+    private val classesBufferSize: Int,
+    transferIntervalMs: Long,
+    private val transfer: (Set<EntitySource>) -> Unit
+) {
+
+    private val logger = KotlinLogging.logger {}
+    private val scannedClasses = ClassNameHashSet()
+    private var scannedBuffer = mutableSetOf<EntitySource>()
+    private val scanOnlyClassNames = ThreadLocal<Set<String>>()
+    private val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "drill-loaded-class-scanner").apply { isDaemon = true }
+    }
+
+    init {
+        executor.scheduleWithFixedDelay(::transferBuffer, transferIntervalMs, transferIntervalMs, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Count of classes scanned so far.
+     */
+    val scannedClassesCount: Int
+        get() = synchronized(scannedClasses) { scannedClasses.size }
+
+    /**
+     * Scan class on its loading or retransformation.
+     * Classes which have been scanned before are skipped.
+     *
+     * @param className internal name of the class
+     * @param bytes initial bytes of the class
+     * @return true if the class is accepted and has not been scanned before
+     */
+    fun scan(className: String, bytes: ByteArray): Boolean {
+        if (!isClassNameAccepted(className)) return false
+        val superName = runCatching { ClassReader(bytes).superName ?: "" }.getOrElse {
+            logger.warn { "LoadedClassScanner: can't read class $className: ${it.message}" }
+            return false
+        }
+        val classSource = ClassSource(className, superName, bytes)
+        if (!classSource.prefixMatches(packagePrefixes)) return false
+        val buffer = synchronized(scannedClasses) {
+            if (!scannedClasses.add(className)) return false
+            scannedBuffer += classSource
+            scannedBuffer.takeIf { it.size >= classesBufferSize }?.also { scannedBuffer = mutableSetOf() }
+        }
+        buffer?.let { executor.execute { transferClasses(it) } }
+        return true
+    }
+
+    /**
+     * Scan loaded classes which have not been scanned yet by retransforming them.
+     *
+     * @param loadedClassNames internal names of loaded classes
+     * @param retransform retransformation of loaded classes by internal names and a batch size
+     * @return count of retransformed classes
+     */
+    fun scanLoadedClasses(
+        loadedClassNames: Set<String>,
+        retransform: (classNames: Set<String>, batchSize: Int) -> Int
+    ): Int {
+        val classNames = synchronized(scannedClasses) {
+            loadedClassNames.filterTo(HashSet()) { isClassNameAccepted(it) && it !in scannedClasses }
+        }
+        logger.info { "LoadedClassScanner: scanning ${classNames.size} classes loaded before" }
+        if (classNames.isEmpty()) return 0
+        scanOnlyClassNames.set(classNames)
+        return try {
+            retransform(classNames, RETRANSFORM_BATCH_SIZE)
+        } finally {
+            scanOnlyClassNames.remove()
+        }
+    }
+
+    /**
+     * Check whether the class is being retransformed by [scanLoadedClasses] only to be scanned.
+     * Such class must be left as it was loaded, so it is not instrumented on its retransformation.
+     * Retransformation calls transformers on the thread which requested it, so the check is bound to that thread:
+     * a class of the same name loaded by another thread meanwhile is not affected.
+     *
+     * @param className internal name of the class
+     * @return true if the class is being retransformed only to be scanned
+     */
+    fun isScanOnly(className: String): Boolean = scanOnlyClassNames.get()?.contains(className) == true
+
+    /**
+     * Transfer buffer of scanned classes on the background thread, even if it's not full.
+     */
+    fun transferBuffer() {
+        val buffer = synchronized(scannedClasses) {
+            scannedBuffer.takeIf(Collection<EntitySource>::isNotEmpty)?.also { scannedBuffer = mutableSetOf() }
+        }
+        buffer?.let { executor.execute { transferClasses(it) } }
+    }
+
+    private fun transferClasses(classes: Set<EntitySource>) = runCatching {
+        transfer(classes)
+    }.onFailure {
+        logger.error(it) { "LoadedClassScanner: can't transfer ${classes.size} scanned classes" }
+    }
+
+    private fun isClassNameAccepted(className: String) =
+        !className.contains('$') &&
+                !className.startsWith(PACKAGE_DRILL) &&
+                ClassSource(className).prefixMatches(packagePrefixes)
+}
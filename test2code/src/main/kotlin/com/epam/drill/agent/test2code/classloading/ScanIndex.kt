@@ -0,0 +1,265 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import mu.KotlinLogging
+import org.jacoco.core.internal.data.CRC64
+import com.epam.drill.agent.common.classloading.EntitySource
+import com.epam.drill.agent.test2code.common.api.AstMethod
+
+private const val ENTRY_FILE_EXTENSION = "idx"
+
+/**
+ * Archive identity used by [ScanIndex]: an archive is considered unchanged if its path, size and modification time are the same
+ */
+data class ArchiveFingerprint(
+    val path: String,
+    val size: Long,
+    val lastModified: Long,
+) {
+    companion object {
+        fun of(file: File) = ArchiveFingerprint(file.absolutePath, file.length(), file.lastModified())
+    }
+}
+
+/**
+ * Class with already parsed methods, e.g. restored from [ScanIndex], it has no bytes
+ */
+class ParsedClassSource(
+    private val entityName: String,
+    val methods: List<AstMethod>,
+) : EntitySource {
+
+    override fun entityName() = entityName
+
+    override fun bytes() = byteArrayOf()
+
+    override fun toString() = "$entityName: ${this::class.simpleName}"
+}
+
+/**
+ * On-disk index of scanned archives, so unchanged archives are not read and parsed again on next scans.
+ *
+ * Entries of different agent versions and scanning options are kept in different subdirectories of the index
+ * directory, so a subdirectory is named after the hash of the [key].
+ * Each archive is stored in a separate file named after the hash of the archive path.
+ *
+ * Classes of scanned archives are reported by [addScanned] and archives are finished by [finishScanned],
+ * parsed methods of classes are reported by [addParsed].
+ * Each archive is stored as soon as it's finished and all its classes have been parsed, so only archives
+ * which classes are still being parsed are kept in memory.
+ */
+class ScanIndex private constructor(private val dir: File) {
+
+    private val scanningArchives = ConcurrentHashMap<ArchiveFingerprint, ScannedArchive>()
+    private val parsingClasses = ConcurrentHashMap<String, ScannedArchive>()
+    private val storedCount = AtomicInteger()
+
+    /**
+     * Get classes of the archive stored by previous scans
+     * @param fingerprint the archive fingerprint
+     * @return classes with parsed methods or null if the archive has not been stored or has changed since
+     */
+    fun get(fingerprint: ArchiveFingerprint): List<ParsedClassSource>? = entryFile(fingerprint).takeIf(File::exists)?.let {
+        try {
+            DataInputStream(it.inputStream().buffered()).use { input ->
+                input.takeIf { input.readFingerprint() == fingerprint }?.readClasses()
+            }
+        } catch (e: IOException) {
+            logger.warn { "Error reading scan index of ${fingerprint.path}: ${e.message}" }
+            null
+        }
+    }
+
+    /**
+     * Report a class found in the archive which is not stored yet
+     * @param fingerprint the archive fingerprint taken before scanning
+     * @param className the class name
+     */
+    fun addScanned(fingerprint: ArchiveFingerprint, className: String) {
+        val archive = scanningArchives.getOrPut(fingerprint) { ScannedArchive(fingerprint) }
+        synchronized(archive) { archive.classNames.add(className) }
+        parsingClasses[className] = archive
+    }
+
+    /**
+     * Report that all classes of the archive have been reported by [addScanned]
+     * @param fingerprint the archive fingerprint taken before scanning
+     * @param complete false if the archive can't be stored, e.g. some of its classes have been skipped
+     */
+    fun finishScanned(fingerprint: ArchiveFingerprint, complete: Boolean) {
+        val archive = scanningArchives.remove(fingerprint) ?: ScannedArchive(fingerprint)
+        if (complete) {
+            synchronized(archive) { archive.finished = true }
+            storeIfParsed(archive)
+        } else {
+            synchronized(archive) { archive.classNames.toList() }.forEach { parsingClasses.remove(it, archive) }
+        }
+    }
+
+    /**
+     * Report parsed methods of a class, the archive of the class is stored once all its classes are parsed
+     * @param className the class name
+     * @param methods parsed methods of the class
+     */
+    fun addParsed(className: String, methods: List<AstMethod>) {
+        val archive = parsingClasses.remove(className) ?: return
+        synchronized(archive) { archive.methods[className] = methods }
+        storeIfParsed(archive)
+    }
+
+    /**
+     * Finish scanning, archives which classes have not all been parsed are not stored
+     */
+    fun close() {
+        logger.info { "Scan index $dir: ${storedCount.get()} archives stored" }
+        scanningArchives.clear()
+        parsingClasses.clear()
+    }
+
+    private fun storeIfParsed(archive: ScannedArchive) {
+        val classes = synchronized(archive) {
+            if (!archive.finished || archive.methods.size < archive.classNames.size) return
+            archive.classNames.map { ParsedClassSource(it, archive.methods.getValue(it)) }
+                .also { archive.methods.clear() }
+        }
+        var file: File? = null
+        try {
+            file = File.createTempFile("archive", ".tmp", dir)
+            DataOutputStream(file.outputStream().buffered()).use {
+                it.writeFingerprint(archive.fingerprint)
+                it.writeClasses(classes)
+            }
+            // entries are replaced atomically, so an interrupted scan doesn't leave an incomplete entry
+            Files.move(
+                file.toPath(),
+                entryFile(archive.fingerprint).toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            )
+            storedCount.incrementAndGet()
+        } catch (e: IOException) {
+            logger.warn { "Error storing scan index of ${archive.fingerprint.path}: ${e.message}" }
+            file?.delete()
+        }
+    }
+
+    private fun entryFile(fingerprint: ArchiveFingerprint) =
+        dir.resolve("${CRC64.classId(fingerprint.path.toByteArray()).toHexString()}.$ENTRY_FILE_EXTENSION")
+
+    companion object {
+        private val logger = KotlinLogging.logger {}
+
+        /**
+         * Open the index for the given agent version and scanning options
+         * @param dir the index directory
+         * @param key the agent version and scanning options
+         * @return the index or null if the index directory can't be used
+         */
+        fun open(dir: File, key: String): ScanIndex? {
+            val keyDir = dir.resolve(CRC64.classId(key.toByteArray()).toHexString())
+            if (!keyDir.mkdirs() && !keyDir.isDirectory) {
+                logger.warn { "Scan index $dir can't be opened" }
+                return null
+            }
+            return ScanIndex(keyDir)
+        }
+    }
+}
+
+/**
+ * Archive which classes are being scanned and parsed
+ */
+private class ScannedArchive(val fingerprint: ArchiveFingerprint) {
+    val classNames = mutableListOf<String>()
+    val methods = HashMap<String, List<AstMethod>>()
+    var finished = false
+}
+
+private fun Long.toHexString() = java.lang.Long.toHexString(this)
+
+private fun DataInputStream.readFingerprint() = ArchiveFingerprint(readUTF(), readLong(), readLong())
+
+private fun DataInputStream.readClasses() = List(readInt()) {
+    ParsedClassSource(readString(), List(readInt()) { readMethod() })
+}
+
+private fun DataInputStream.readMethod() = AstMethod(
+    classname = readString(),
+    name = readString(),
+    params = readString(),
+    returnType = readString(),
+    probesCount = readInt(),
+    probesStartPos = readInt(),
+    bodyChecksum = readString(),
+    annotations = readAnnotations(),
+    classAnnotations = readAnnotations(),
+)
+
+private fun DataInputStream.readAnnotations(): Map<String, List<String>>? = readInt().takeIf { it >= 0 }?.let { size ->
+    (1..size).associate { readString() to List(readInt()) { readString() } }
+}
+
+private fun DataInputStream.readString(): String = String(ByteArray(readInt()).also(::readFully), Charsets.UTF_8)
+
+private fun DataOutputStream.writeFingerprint(fingerprint: ArchiveFingerprint) {
+    writeUTF(fingerprint.path)
+    writeLong(fingerprint.size)
+    writeLong(fingerprint.lastModified)
+}
+
+private fun DataOutputStream.writeClasses(classes: List<ParsedClassSource>) {
+    writeInt(classes.size)
+    classes.forEach { parsedClass ->
+        writeString(parsedClass.entityName())
+        writeInt(parsedClass.methods.size)
+        parsedClass.methods.forEach { writeMethod(it) }
+    }
+}
+
+private fun DataOutputStream.writeMethod(method: AstMethod) {
+    writeString(method.classname)
+    writeString(method.name)
+    writeString(method.params)
+    writeString(method.returnType)
+    writeInt(method.probesCount)
+    writeInt(method.probesStartPos)
+    writeString(method.bodyChecksum)
+    writeAnnotations(method.annotations)
+    writeAnnotations(method.classAnnotations)
+}
+
+private fun DataOutputStream.writeAnnotations(annotations: Map<String, List<String>>?) {
+    writeInt(annotations?.size ?: -1)
+    annotations?.forEach { (name, values) ->
+        writeString(name)
+        writeInt(values.size)
+        values.forEach { writeString(it) }
+    }
+}
+
+private fun DataOutputStream.writeString(value: String) = value.toByteArray(Charsets.UTF_8).let {
+    writeInt(it.size)
+    write(it)
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.zip.Inflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+
+private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+private const val END_OF_CENTRAL_DIRECTORY_SIZE = 22
+private const val CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50
+private const val CENTRAL_DIRECTORY_HEADER_SIZE = 46
+private const val LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50
+private const val LOCAL_FILE_HEADER_SIZE = 30
+private const val MAX_COMMENT_SIZE = 0xFFFF
+
+/**
+ * ZIP archive kept in a byte buffer and read via its central directory.
+ *
+ * Entry data are accessed only by [read] and [slice], so entries which are not requested are not decompressed.
+ * Stored (not compressed) entries are sliced from the archive buffer without copying,
+ * e.g. JARs nested into Spring Boot archives.
+ *
+ * ZIP64 archives are not supported, [ZipException] is thrown for them.
+ *
+ * @param archive buffer containing the whole archive from its position to its limit
+ */
+class ZipCentralDirectory(archive: ByteBuffer) {
+
+    private val buffer: ByteBuffer = archive.slice().order(ByteOrder.LITTLE_ENDIAN)
+
+    /**
+     * Entries in the order of the central directory
+     */
+    val entries: List<Entry> = readEntries()
+
+    class Entry(
+        val name: String,
+        internal val method: Int,
+        internal val compressedSize: Int,
+        internal val size: Int,
+        internal val localHeaderOffset: Int
+    ) {
+        val isDirectory: Boolean
+            get() = name.endsWith('/')
+    }
+
+    /**
+     * Read entry data, decompressing them if necessary
+     * @param entry the entry of this archive
+     * @return entry data
+     */
+    fun read(entry: Entry): ByteArray = when (entry.method) {
+        ZipEntry.STORED -> data(entry).let { data -> ByteArray(data.remaining()).also { data.get(it) } }
+        ZipEntry.DEFLATED -> inflate(entry)
+        else -> throw ZipException("Unsupported compression method ${entry.method} of entry ${entry.name}")
+    }
+
+    /**
+     * Get entry data as a buffer, stored entries are not copied
+     * @param entry the entry of this archive
+     * @return buffer of entry data
+     */
+    fun slice(entry: Entry): ByteBuffer = when (entry.method) {
+        ZipEntry.STORED -> data(entry)
+        else -> ByteBuffer.wrap(read(entry))
+    }
+
+    private fun readEntries(): List<Entry> {
+        val end = findEndOfCentralDirectory()
+        val count = buffer.uShort(end + 10)
+        val size = buffer.getInt(end + 12)
+        val offset = buffer.getInt(end + 16)
+        if (count == 0xFFFF || size == -1 || offset == -1) throw ZipException("ZIP64 archives are not supported")
+        // archive may be prepended with other data, e.g. with a launch script
+        val base = end - size - offset
+        var position = base + offset
+        return List(count) {
+            if (buffer.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE)
+                throw ZipException("Invalid central directory header at $position")
+            val nameLength = buffer.uShort(position + 28)
+            val entry = Entry(
+                name = buffer.string(position + CENTRAL_DIRECTORY_HEADER_SIZE, nameLength),
+                method = buffer.uShort(position + 10),
+                compressedSize = buffer.getInt(position + 20),
+                size = buffer.getInt(position + 24),
+                localHeaderOffset = base + buffer.getInt(position + 42)
+            )
+            if (entry.compressedSize < 0 || entry.size < 0 || entry.localHeaderOffset < base)
+                throw ZipException("ZIP64 archives are not supported")
+            position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength +
+                    buffer.uShort(position + 30) + buffer.uShort(position + 32)
+            entry
+        }
+    }
+
+    private fun findEndOfCentralDirectory(): Int {
+        val last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE
+        val first = maxOf(0, last - MAX_COMMENT_SIZE)
+        for (position in last downTo first) {
+            if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE &&
+                position + END_OF_CENTRAL_DIRECTORY_SIZE + buffer.uShort(position + 20) == buffer.limit()
+            ) return position
+        }
+        throw ZipException("End of central directory is not found")
+    }
+
+    private fun data(entry: Entry): ByteBuffer {
+        val header = entry.localHeaderOffset
+        if (buffer.getInt(header) != LOCAL_FILE_HEADER_SIGNATURE)
+            throw ZipException("Invalid local header of entry ${entry.name}")
+        val offset = header + LOCAL_FILE_HEADER_SIZE + buffer.uShort(header + 26) + buffer.uShort(header + 28)
+        return buffer.duplicate().apply {
+            limit(offset + entry.compressedSize)
+            position(offset)
+        }.slice()
+    }
+
+    private fun inflate(entry: Entry): ByteArray {
+        val data = data(entry)
+        // raw inflater may need an extra dummy byte of input
+        val input = ByteArray(data.remaining() + 1).also { data.get(it, 0, it.size - 1) }
+        val output = ByteArray(entry.size)
+        val inflater = Inflater(true)
+        try {
+            inflater.setInput(input)
+            var inflated = 0
+            while (inflated < output.size) {
+                val count = inflater.inflate(output, inflated, output.size - inflated)
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break
+                inflated += count
+            }
+            if (inflated != output.size) throw ZipException("Invalid size of entry ${entry.name}")
+        } finally {
+            inflater.end()
+        }
+        return output
+    }
+
+    private fun ByteBuffer.uShort(index: Int) = getShort(index).toInt() and 0xFFFF
+
+    private fun ByteBuffer.string(index: Int, length: Int) = ByteArray(length).let { bytes ->
+        duplicate().apply { position(index) }.get(bytes)
+        String(bytes, Charsets.UTF_8)
+    }
+}
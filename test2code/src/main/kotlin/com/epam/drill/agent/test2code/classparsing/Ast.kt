@@ -78,7 +78,7 @@ class MethodProbeCounter(
 ) : MethodProbesVisitor() {
 
     private val probes = ArrayList<Int>()
-    private lateinit var methodNode: MethodNode
+    internal lateinit var methodNode: MethodNode
 
 
     override fun visitEnd() {
@@ -117,10 +117,89 @@ class MethodProbeCounter(
     }
 }
 
-fun parseAstClass(className: String, classBytes: ByteArray): List<AstMethod> {
+/**
+ * Counts probes of the class the same way as [ClassProbeCounter] while passing the class to the instrumenting [cv],
+ * so probes of an instrumented class can be counted without a separate pass over the class bytes.
+ *
+ * [count] and [methods] are known only after the class has been visited completely.
+ */
+class InstrumentingProbeCounter(
+    private val classname: String,
+    private val cv: ClassProbesVisitor,
+    val methods: MutableList<AstMethod> = ArrayList()
+) : ClassProbesVisitor(cv) {
+    var count = 0
+        private set
+
+    override fun visitMethod(
+        access: Int, name: String?, desc: String?, signature: String?, exceptions: Array<out String>?
+    ): MethodProbesVisitor = InstrumentingMethodProbeCounter(
+        MethodProbeCounter(classname = classname, methods = methods),
+        cv.visitMethod(access, name, desc, signature, exceptions)
+    )
+
+    override fun visitTotalProbeCount(count: Int) {
+        this.count = count
+        cv.visitTotalProbeCount(count)
+    }
+}
+
+private class InstrumentingMethodProbeCounter(
+    private val counter: MethodProbeCounter,
+    private val mv: MethodProbesVisitor
+) : MethodProbesVisitor(mv) {
+
+    override fun accept(methodNode: MethodNode?, methodVisitor: MethodVisitor?) {
+        counter.methodNode = methodNode!!
+        mv.accept(methodNode, methodVisitor)
+    }
+
+    override fun visitEnd() {
+        super.visitEnd()
+        counter.visitEnd()
+    }
+
+    override fun visitProbe(probeId: Int) {
+        counter.visitProbe(probeId)
+        mv.visitProbe(probeId)
+    }
+
+    override fun visitInsnWithProbe(opcode: Int, probeId: Int) {
+        counter.visitInsnWithProbe(opcode, probeId)
+        mv.visitInsnWithProbe(opcode, probeId)
+    }
+
+    override fun visitJumpInsnWithProbe(opcode: Int, label: Label?, probeId: Int, frame: IFrame?) {
+        counter.visitJumpInsnWithProbe(opcode, label, probeId, frame)
+        mv.visitJumpInsnWithProbe(opcode, label, probeId, frame)
+    }
+
+    override fun visitTableSwitchInsnWithProbes(
+        min: Int, max: Int, dflt: Label?, labels: Array<out Label>?, frame: IFrame?
+    ) {
+        counter.visitTableSwitchInsnWithProbes(min, max, dflt, labels, frame)
+        mv.visitTableSwitchInsnWithProbes(min, max, dflt, labels, frame)
+    }
+
+    override fun visitLookupSwitchInsnWithProbes(
+        dflt: Label?, keys: IntArray?, labels: Array<out Label>?, frame: IFrame?
+    ) {
+        counter.visitLookupSwitchInsnWithProbes(dflt, keys, labels, frame)
+        mv.visitLookupSwitchInsnWithProbes(dflt, keys, labels, frame)
+    }
+}
+
+/**
+ * Parse methods of the class
+ * @param className the class name
+ * @param classBytes the class bytes
+ * @param methodEntryProbesOnly whether methods are instrumented with a single probe at the method entry
+ * @return the methods with probe ranges and checksums
+ */
+fun parseAstClass(className: String, classBytes: ByteArray, methodEntryProbesOnly: Boolean = false): List<AstMethod> {
     val classReader = InstrSupport.classReaderFor(classBytes)
     val counter = ClassProbeCounter(className)
-    classReader.accept(DrillClassProbesAdapter(counter, false), 0)
+    classReader.accept(DrillClassProbesAdapter(counter, false, methodEntryProbesOnly), 0)
     val astMethodsWithChecksum = calculateMethodsChecksums(classBytes, className)
     val classAnnotations = counter.getAnnotations()
     return counter.methods.map {
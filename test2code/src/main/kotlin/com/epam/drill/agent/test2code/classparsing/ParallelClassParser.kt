@@ -0,0 +1,72 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classparsing
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.Future
+import mu.KotlinLogging
+import com.epam.drill.agent.common.classloading.EntitySource
+import com.epam.drill.agent.test2code.common.api.AstMethod
+
+/**
+ * Parses chunks of scanned classes by a fork-join pool of [threads] size
+ * and passes parsed methods to [consumer] on the calling thread in the order the chunks have been submitted.
+ *
+ * At most two chunks per thread are parsed or waiting to be consumed at the same time.
+ * If [threads] is 1, chunks are parsed on the calling thread.
+ */
+class ParallelClassParser(
+    threads: Int,
+    private val parse: (EntitySource) -> List<AstMethod>,
+    private val consumer: (List<AstMethod>) -> Unit
+) {
+    private val logger = KotlinLogging.logger {}
+    private val executor = threads.takeIf { it > 1 }?.let(::ForkJoinPool)
+    private val maxPendingChunks = threads * 2
+    private val pendingChunks = ArrayDeque<Future<List<AstMethod>>>()
+
+    /**
+     * Submit chunk of classes for parsing
+     * @param classes the chunk of classes, copied before parsing
+     */
+    fun submit(classes: Collection<EntitySource>) {
+        if (executor == null) return consumer(parseChunk(classes))
+        while (pendingChunks.size >= maxPendingChunks) consumeChunk(pendingChunks.removeFirst())
+        val chunk = classes.toList()
+        pendingChunks.addLast(executor.submit(Callable { parseChunk(chunk) }))
+    }
+
+    /**
+     * Wait for all submitted chunks, pass them to the consumer and stop parsing threads
+     */
+    fun finish() {
+        try {
+            while (pendingChunks.isNotEmpty()) consumeChunk(pendingChunks.removeFirst())
+        } finally {
+            executor?.shutdownNow()
+        }
+    }
+
+    private fun parseChunk(classes: Collection<EntitySource>) = classes.flatMap { entity ->
+        runCatching { parse(entity) }.getOrElse {
+            logger.warn { "Error parsing class ${entity.entityName()}: ${it.message}" }
+            emptyList()
+        }
+    }
+
+    private fun consumeChunk(chunk: Future<List<AstMethod>>) = consumer(chunk.get())
+}
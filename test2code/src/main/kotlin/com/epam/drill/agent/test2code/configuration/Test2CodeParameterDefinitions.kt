@@ -23,6 +23,8 @@ import com.epam.drill.agent.common.configuration.ValidationType
 import com.epam.drill.agent.configuration.isNotBlank
 import com.epam.drill.agent.configuration.isValidPackage
 import com.epam.drill.agent.configuration.minDuration
+import com.epam.drill.agent.konform.validation.jsonschema.minimum
+import com.epam.drill.agent.test2code.coverage.RELEASED_SHARDS_COUNT
 
 object Test2CodeParameterDefinitions : AgentParameterDefinitionCollection() {
 
@@ -47,6 +49,49 @@ object Test2CodeParameterDefinitions : AgentParameterDefinitionCollection() {
         name = "enableScanClassLoaders",
         defaultValue = true
     ).register()
+    val SCAN_CLASS_THREADS = AgentParameterDefinition.forInt(
+        name = "scanClassThreads",
+        description = "Count of threads scanning archives and parsing scanned classes in parallel, 1 to scan on a single thread",
+        defaultValue = Runtime.getRuntime().availableProcessors(),
+        validation = ValidationType.SOFT,
+        validator = {
+            minimum(1)
+        }
+    ).register()
+    val SCAN_ARCHIVE_READER = AgentParameterDefinition.forString(
+        name = "scanArchiveReader",
+        description = """
+            Reader of scanned archives. Possible values:
+            CENTRAL_DIRECTORY - entries are found via the central directory, only classes matching package prefixes are decompressed;
+            STREAM - all entries are read sequentially.
+        """.trimIndent(),
+        defaultValue = "CENTRAL_DIRECTORY"
+    ).register()
+    val SCAN_INDEX_DIR = AgentParameterDefinition.forString(
+        name = "scanIndexDir",
+        description = "Directory to keep classes of scanned archives between scans, so unchanged archives are not parsed again. Indexing is disabled if not set.",
+        defaultValue = ""
+    ).register()
+    val SCAN_CLASS_SOURCE = AgentParameterDefinition.forString(
+        name = "scanClassSource",
+        description = """
+            Source of scanned classes. Possible values:
+            CLASS_PATH - classes are read from class paths of class loaders and scanClassPath;
+            LOADED_CLASSES - classes are taken on loading by the JVM and sent as they are loaded,
+            classes loaded before the agent are retransformed. BuildFinalizePayload is never sent in this mode,
+            as loaded classes are never complete, so the build checksum and methods count are not reported.
+        """.trimIndent(),
+        defaultValue = "CLASS_PATH"
+    ).register()
+    val SCAN_LOADED_CLASSES_INTERVAL = AgentParameterDefinition.forLong(
+        name = "scanLoadedClassesInterval",
+        description = "Max interval in ms between loading of a class and sending its metadata, used with LOADED_CLASSES scan class source",
+        defaultValue = 1000L,
+        validation = ValidationType.SOFT,
+        validator = {
+            minimum(1L)
+        }
+    ).register()
     val COVERAGE_SEND_INTERVAL = AgentParameterDefinition.forLong(
         name = "coverageSendInterval",
         defaultValue = 2000L
@@ -55,6 +100,107 @@ object Test2CodeParameterDefinitions : AgentParameterDefinitionCollection() {
         name = "coverageSendPageSize",
         defaultValue = 1000
     ).register()
+    val PROBES_STORAGE = AgentParameterDefinition.forString(
+        name = "probesStorage",
+        description = """
+            Storage of class probes. Possible values:
+            BOOLEAN_ARRAY - one byte per probe;
+            PACKED - one bit per probe, takes 8 times less memory at the cost of a CAS on the first probe hit.
+        """.trimIndent(),
+        defaultValue = "BOOLEAN_ARRAY"
+    ).register()
+    val PROBES_GRANULARITY = AgentParameterDefinition.forString(
+        name = "probesGranularity",
+        description = """
+            Granularity of inserted probes. Possible values:
+            BRANCH - probes at every branch of a method;
+            METHOD - a single probe at the entry of a method, only tells whether the method has been executed.
+        """.trimIndent(),
+        defaultValue = "BRANCH"
+    ).register()
+    val COVERAGE_MODE = AgentParameterDefinition.forString(
+        name = "coverageMode",
+        description = """
+            Mode of coverage collection. Possible values:
+            PER_TEST - probes are recorded to the test context of the thread, or to the ambient coverage if it's not set;
+            AMBIENT_UNTIL_FIRST_TEST - probes are recorded to the ambient coverage without looking up the thread context
+            until the first request with a test context, then as in PER_TEST mode;
+            AMBIENT_ONLY - probes are recorded only to the ambient coverage, test contexts are ignored.
+            Probes of a class are taken once and kept in a static field of the class, which makes probes almost free.
+        """.trimIndent(),
+        defaultValue = "PER_TEST"
+    ).register()
+    val LAZY_INSTRUMENTATION = AgentParameterDefinition.forBoolean(
+        name = "lazyInstrumentation",
+        description = """
+            Load classes uninstrumented until the first request with a test context
+            (or the first request of any kind in AMBIENT_ONLY mode),
+            then instrument already loaded classes by retransformation.
+            Requires the JVM support of class retransformation. Static probes of AMBIENT_ONLY mode are not used.
+        """.trimIndent(),
+        defaultValue = false
+    ).register()
+    val ASYNC_METHOD_CHECKSUMS = AgentParameterDefinition.forBoolean(
+        name = "asyncMethodChecksums",
+        description = """
+            Calculate method body checksums of instrumented classes on a background thread instead of the class loading thread.
+            Coverage of a class is sent once its checksums are calculated.
+            Checksums of classes loaded while the calculation queue is full are calculated on the class loading thread.
+        """.trimIndent(),
+        defaultValue = false
+    ).register()
+    val INSTRUMENTATION_CACHE_DIR = AgentParameterDefinition.forString(
+        name = "instrumentationCacheDir",
+        description = "Directory to cache instrumented classes between starts. Caching is disabled if not set.",
+        defaultValue = ""
+    ).register()
+    val INSTRUMENTATION_CACHE_MAX_SIZE = AgentParameterDefinition.forLong(
+        name = "instrumentationCacheMaxSize",
+        description = "Max size in bytes of cached instrumented classes, up to 2 GB. A full cache is rotated on the next start.",
+        defaultValue = 512L * 1024 * 1024
+    ).register()
+    val COVERAGE_WIRE_FORMAT = AgentParameterDefinition.forString(
+        name = "coverageWireFormat",
+        description = """
+            Format of sent coverage. Possible values:
+            FULL - all probes of a method each time the method is covered;
+            DELTA - only probes covered since the previous sending, requires the admin side support.
+        """.trimIndent(),
+        defaultValue = "FULL"
+    ).register()
+    val PROBES_ENCODING = AgentParameterDefinition.forString(
+        name = "probesEncoding",
+        description = """
+            Encoding of method probes in sent coverage. Possible values:
+            BIT_STRING - one '0'/'1' character per probe;
+            BASE64 - Base64 of probe bits, about 6 times shorter, requires the admin side support.
+        """.trimIndent(),
+        defaultValue = "BIT_STRING"
+    ).register()
+    val RELEASED_COVERAGE_MAX_COUNT = AgentParameterDefinition.forInt(
+        name = "releasedCoverageMaxCount",
+        description = "Max count of test contexts with released coverage waiting to be sent, unbounded by default. " +
+                "The limit is approximate, as it's split between $RELEASED_SHARDS_COUNT shards, so it must be at least $RELEASED_SHARDS_COUNT",
+        defaultValue = Int.MAX_VALUE,
+        validator = {
+            minimum(RELEASED_SHARDS_COUNT)
+        }
+    ).register()
+    val RELEASED_COVERAGE_MAX_BYTES = AgentParameterDefinition.forLong(
+        name = "releasedCoverageMaxBytes",
+        description = "Max estimated size in bytes of released coverage waiting to be sent, unbounded by default",
+        defaultValue = Long.MAX_VALUE
+    ).register()
+    val RELEASED_COVERAGE_OVERFLOW_POLICY = AgentParameterDefinition.forString(
+        name = "releasedCoverageOverflowPolicy",
+        description = """
+            What to do when released coverage exceeds the limits. Possible values:
+            MERGE_INTO_AMBIENT - merge the oldest test coverage into the ambient coverage, losing test attribution;
+            DROP_OLDEST - drop the oldest test coverage;
+            BLOCK - block application threads up to coverageSendInterval until coverage is sent, then drop the oldest.
+        """.trimIndent(),
+        defaultValue = "MERGE_INTO_AMBIENT"
+    ).register()
     val METHODS_SEND_PAGE_SIZE = AgentParameterDefinition.forInt(
         name = "methodsSendPageSize",
         defaultValue = 1000
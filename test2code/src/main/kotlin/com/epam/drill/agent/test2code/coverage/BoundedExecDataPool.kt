@@ -0,0 +1,275 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import mu.KotlinLogging
+import com.epam.drill.agent.jacoco.PackedAgentProbes
+
+/**
+ * Count of shards of released exec data in [BoundedExecDataPool], the least count limit it can enforce
+ */
+const val RELEASED_SHARDS_COUNT = 16
+private const val EXEC_DATUM_OVERHEAD_BYTES = 64
+
+/**
+ * What to do with released exec data when the pool is full
+ */
+enum class OverflowPolicy {
+    /**
+     * Merge the oldest released exec data into the ambient context, keeping coverage but losing test attribution
+     */
+    MERGE_INTO_AMBIENT,
+
+    /**
+     * Drop the oldest released exec data
+     */
+    DROP_OLDEST,
+
+    /**
+     * Block the releasing thread until released exec data are polled, then drop the oldest ones on timeout
+     */
+    BLOCK,
+}
+
+/**
+ * Counters of [BoundedExecDataPool]
+ * @param releasedCount the count of released exec data waiting to be polled
+ * @param releasedBytes the estimated size of released exec data waiting to be polled
+ * @param merged the count of releases merged into exec data released earlier with the same context
+ * @param mergedIntoAmbient the count of released exec data merged into the ambient context on overflow
+ * @param dropped the count of released exec data dropped on overflow
+ * @param blocked the count of releases that waited for free space
+ */
+data class DataPoolMetrics(
+    val releasedCount: Int,
+    val releasedBytes: Long,
+    val merged: Long,
+    val mergedIntoAmbient: Long,
+    val dropped: Long,
+    val blocked: Long,
+)
+
+/**
+ * Exec data pool with released exec data bounded by count and estimated size.
+ *
+ * Exec data released with the same [ContextKey] are merged into one map, so repeated requests of a test collapse.
+ * When the limits are exceeded, the oldest released exec data are handled according to the [OverflowPolicy].
+ * Released exec data are split into shards by context, each shard is locked and limited separately.
+ * Each shard is limited by 1/[RELEASED_SHARDS_COUNT] of the limits, so the limits are approximate:
+ * overflow of a shard is handled even if other shards have free space.
+ * The count limit must be at least [RELEASED_SHARDS_COUNT], as each shard keeps at least one exec data.
+ * By default released exec data are unbounded, as before the limits were introduced.
+ * @see DataPool
+ */
+class BoundedExecDataPool(
+    maxReleasedCount: Int = Int.MAX_VALUE,
+    maxReleasedBytes: Long = Long.MAX_VALUE,
+    overflowPolicy: OverflowPolicy = OverflowPolicy.MERGE_INTO_AMBIENT,
+    blockTimeoutMs: Long = 2000L,
+) : DataPool<ContextKey, ExecData> {
+    private val logger = KotlinLogging.logger {}
+    private val dataMap = ConcurrentHashMap<ContextKey, ExecData>()
+    private val shards = Array(RELEASED_SHARDS_COUNT) { Shard() }
+    private val ambientLock = ReentrantLock()
+    private var ambientExecData = ExecData()
+
+    private val merged = AtomicLong()
+    private val mergedIntoAmbient = AtomicLong()
+    private val dropped = AtomicLong()
+    private val blocked = AtomicLong()
+    @Volatile
+    private var reportedMetrics = metrics()
+
+    @Volatile
+    private var maxShardCount = countShardLimit(maxReleasedCount)
+    @Volatile
+    private var maxShardBytes = shardLimit(maxReleasedBytes)
+    @Volatile
+    private var overflowPolicy = overflowPolicy
+    @Volatile
+    private var blockTimeoutMs = blockTimeoutMs
+
+    /**
+     * Change the limits, it's expected to be called before recording starts
+     * @throws IllegalArgumentException if [maxReleasedCount] is less than [RELEASED_SHARDS_COUNT]
+     */
+    fun configure(maxReleasedCount: Int, maxReleasedBytes: Long, overflowPolicy: OverflowPolicy, blockTimeoutMs: Long) {
+        this.maxShardCount = countShardLimit(maxReleasedCount)
+        this.maxShardBytes = shardLimit(maxReleasedBytes)
+        this.overflowPolicy = overflowPolicy
+        this.blockTimeoutMs = blockTimeoutMs
+    }
+
+    override fun getOrPut(key: ContextKey, default: () -> ExecData): ExecData {
+        return dataMap.getOrPut(key, default)
+    }
+
+    override fun get(key: ContextKey): ExecData? {
+        return dataMap[key]
+    }
+
+    override fun getAll(): Map<ContextKey, ExecData> {
+        return dataMap.toMap()
+    }
+
+    override fun release(key: ContextKey, value: ExecData) {
+        dataMap.remove(key)
+        shards[(key.hashCode() and Int.MAX_VALUE) % RELEASED_SHARDS_COUNT].release(key, value)
+    }
+
+    override fun pollReleased(): Sequence<ExecData> {
+        val polled = ArrayList<ExecData>()
+        shards.forEach { polled.addAll(it.poll()) }
+        ambientLock.withLock {
+            if (ambientExecData.isNotEmpty()) {
+                polled.add(ambientExecData)
+                ambientExecData = ExecData()
+            }
+        }
+        reportMetrics(polled.size)
+        return polled.asSequence()
+    }
+
+    /**
+     * @return the current counters of the pool, also logged at info level when overflow counters change
+     */
+    fun metrics() = DataPoolMetrics(
+        releasedCount = shards.sumOf { it.count() },
+        releasedBytes = shards.sumOf { it.bytes() },
+        merged = merged.get(),
+        mergedIntoAmbient = mergedIntoAmbient.get(),
+        dropped = dropped.get(),
+        blocked = blocked.get(),
+    )
+
+    private fun reportMetrics(polledCount: Int) {
+        val metrics = metrics()
+        val reported = reportedMetrics
+        reportedMetrics = metrics
+        if (metrics.mergedIntoAmbient != reported.mergedIntoAmbient || metrics.dropped != reported.dropped ||
+            metrics.blocked != reported.blocked
+        ) logger.info { "Released coverage limits are exceeded, polled $polledCount released exec data, $metrics" }
+        else logger.debug { "Polled $polledCount released exec data, $metrics" }
+    }
+
+    private fun mergeIntoAmbient(execData: ExecData) = ambientLock.withLock {
+        execData.values.forEach { datum ->
+            ambientExecData[datum.id]?.probes?.merge(datum.probes) ?: ambientExecData.put(
+                datum.id,
+                datum.copy(sessionId = SESSION_CONTEXT_AMBIENT, testId = TEST_CONTEXT_NONE)
+            )
+        }
+    }
+
+    private fun countShardLimit(maxReleasedCount: Int): Int {
+        require(maxReleasedCount >= RELEASED_SHARDS_COUNT) {
+            "Released coverage count limit $maxReleasedCount is less than $RELEASED_SHARDS_COUNT"
+        }
+        return shardLimit(maxReleasedCount.toLong()).toInt()
+    }
+
+    private fun shardLimit(limit: Long) = (limit / RELEASED_SHARDS_COUNT + if (limit % RELEASED_SHARDS_COUNT == 0L) 0 else 1)
+        .coerceAtLeast(1)
+
+    private inner class Shard {
+        private val lock = ReentrantLock()
+        private val notFull = lock.newCondition()
+        private var released = LinkedHashMap<ContextKey, ExecData>()
+        private var releasedBytes = 0L
+
+        fun release(key: ContextKey, value: ExecData) = lock.withLock {
+            val existing = released[key]
+            if (existing != null) {
+                if (existing !== value) {
+                    releasedBytes += merge(existing, value)
+                    merged.incrementAndGet()
+                }
+            } else {
+                val bytes = estimateBytes(value)
+                if (overflowPolicy == OverflowPolicy.BLOCK && isFull(bytes)) awaitNotFull(bytes)
+                released[key] = value
+                releasedBytes += bytes
+            }
+            evictOverflow(key)
+        }
+
+        fun poll(): Collection<ExecData> = lock.withLock {
+            if (released.isEmpty()) return emptyList()
+            val polled = released.values
+            released = LinkedHashMap()
+            releasedBytes = 0L
+            notFull.signalAll()
+            polled
+        }
+
+        fun count() = lock.withLock { released.size }
+
+        fun bytes() = lock.withLock { releasedBytes }
+
+        private fun isFull(bytes: Long) = released.size >= maxShardCount || releasedBytes + bytes > maxShardBytes
+
+        private fun awaitNotFull(bytes: Long) {
+            blocked.incrementAndGet()
+            var remainingNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs)
+            while (isFull(bytes) && remainingNanos > 0) {
+                remainingNanos = notFull.awaitNanos(remainingNanos)
+            }
+        }
+
+        private fun evictOverflow(lastKey: ContextKey) {
+            val iterator = released.entries.iterator()
+            while ((released.size > maxShardCount || releasedBytes > maxShardBytes) && iterator.hasNext()) {
+                val (key, value) = iterator.next()
+                if (key == lastKey) continue
+                iterator.remove()
+                releasedBytes = (releasedBytes - estimateBytes(value)).coerceAtLeast(0)
+                if (overflowPolicy == OverflowPolicy.MERGE_INTO_AMBIENT) {
+                    mergeIntoAmbient(value)
+                    if (mergedIntoAmbient.getAndIncrement() == 0L)
+                        logger.warn { "Released coverage limit is exceeded, merging test coverage into the ambient context." }
+                } else {
+                    if (dropped.getAndIncrement() == 0L)
+                        logger.warn { "Released coverage limit is exceeded, dropping the oldest test coverage." }
+                }
+            }
+        }
+
+        /**
+         * @return the estimated size of exec data added to the target
+         */
+        private fun merge(target: ExecData, source: ExecData): Long {
+            var addedBytes = 0L
+            source.values.forEach { datum ->
+                val existing = target.putIfAbsent(datum.id, datum)
+                if (existing != null) existing.probes.merge(datum.probes)
+                else addedBytes += estimateBytes(datum)
+            }
+            return addedBytes
+        }
+    }
+}
+
+private fun estimateBytes(execData: ExecData): Long = execData.values.sumOf { estimateBytes(it) }
+
+private fun estimateBytes(datum: ExecDatum): Long = EXEC_DATUM_OVERHEAD_BYTES + when (val probes = datum.probes) {
+    is PackedAgentProbes -> probes.size / 8L
+    else -> probes.size.toLong()
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.FutureTask
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import mu.KotlinLogging
+
+/**
+ * Calculates method body checksums of instrumented classes on a background thread,
+ * so class loading is not delayed by checksum calculation.
+ *
+ * Tasks are run one by one in the order of submission,
+ * so [await] can wait for all tasks submitted before it has been called.
+ * Each task keeps the initial bytes of its class, so at most [maxQueueSize] tasks are queued.
+ * When the queue is full, a task is run on the submitting thread, as if checksums were calculated synchronously.
+ */
+class ChecksumExecutor(maxQueueSize: Int = 256) {
+    private val logger = KotlinLogging.logger {}
+    private val executor = ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, ArrayBlockingQueue(maxQueueSize)) { runnable ->
+        Thread(runnable, "drill-checksum-calculator").apply { isDaemon = true }
+    }.apply { prestartAllCoreThreads() }
+
+    fun submit(task: () -> Unit) = try {
+        executor.execute { run(task) }
+    } catch (e: RejectedExecutionException) {
+        run(task)
+    }
+
+    /**
+     * Wait for tasks submitted so far
+     * @param timeoutMs max time to wait
+     * @return true if all tasks submitted so far are done
+     */
+    fun await(timeoutMs: Long): Boolean = runCatching {
+        val startNanos = System.nanoTime()
+        val marker = FutureTask {}
+        // the marker is queued bypassing the executor, so it waits for free space instead of being run on the caller
+        check(executor.queue.offer(marker, timeoutMs, TimeUnit.MILLISECONDS)) { "the queue is full" }
+        marker.get(timeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), TimeUnit.MILLISECONDS)
+    }.onFailure {
+        logger.warn { "Checksum calculation is not finished in $timeoutMs ms: ${it.message}" }
+    }.isSuccess
+
+    private fun run(task: () -> Unit) {
+        runCatching(task).onFailure { logger.error(it) { "Checksum calculation failed" } }
+    }
+}
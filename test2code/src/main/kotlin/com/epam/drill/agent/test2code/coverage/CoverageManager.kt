@@ -16,8 +16,30 @@
 package com.epam.drill.agent.test2code.coverage
 
 import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.jacoco.PackedAgentProbes
 import java.util.concurrent.ConcurrentHashMap
 
+/**
+ * How probes are attributed to test contexts
+ */
+enum class CoverageMode {
+    /**
+     * Probes are recorded to the test context of the thread, or to the ambient coverage if it's not set
+     */
+    PER_TEST,
+
+    /**
+     * Probes are recorded to the ambient coverage without looking up the thread context
+     * until the first test recording is started, then as in [PER_TEST] mode
+     */
+    AMBIENT_UNTIL_FIRST_TEST,
+
+    /**
+     * Probes are recorded only to the ambient coverage, test contexts are ignored
+     */
+    AMBIENT_ONLY,
+}
+
 open class CoverageManager(
     private val threadCoverageRecorder: ICoverageRecorder = ThreadCoverageRecorder(),
     private val globalCoverageRecorder: GlobalCoverageRecorder = GlobalCoverageRecorder(),
@@ -27,24 +49,45 @@ open class CoverageManager(
     // TODO doesn't make much sense to store it here, if we use it only in coverage sender
     val classMethodsMetadata: ConcurrentHashMap<Long, ClassMethodsMetadata> = ConcurrentHashMap()
 
+    @Volatile
+    private var coverageMode = CoverageMode.PER_TEST
+
+    /**
+     * If false, probes are taken from the ambient coverage without looking up the thread context.
+     * In [CoverageMode.AMBIENT_UNTIL_FIRST_TEST] mode it's switched on by the first [startRecording].
+     */
+    @Volatile
+    private var threadRecording = true
+
+    /**
+     * Set how probes are attributed to test contexts
+     * @param mode the coverage mode
+     */
+    fun configureCoverageMode(mode: CoverageMode) {
+        coverageMode = mode
+        threadRecording = mode == CoverageMode.PER_TEST
+    }
+
+    override fun startRecording(sessionId: String?, testId: String?) {
+        if (coverageMode == CoverageMode.AMBIENT_UNTIL_FIRST_TEST) threadRecording = true
+        threadCoverageRecorder.startRecording(sessionId, testId)
+    }
+
     override fun invoke(
         id: Long,
         num: Int,
         name: String,
         probeCount: Int,
-    ): AgentProbes {
-        val coverage: ContextCoverage = threadCoverageRecorder.getContext()
-            ?: globalCoverageRecorder.getContext()
-        val execDatum = coverage.execData.getOrPut(id) {
-            ExecDatum(
-                id = id,
-                probes = AgentProbes(probeCount),
-                sessionId = coverage.context.sessionId,
-                testId = coverage.context.testId
-            )
-        }
-        return execDatum.probes
-    }
+    ): AgentProbes = getProbes(id, num) { tracker -> AgentProbes(probeCount, classId = id, tracker = tracker) }
+
+    override fun invokePacked(
+        id: Long,
+        num: Int,
+        name: String,
+        probeCount: Int,
+    ): PackedAgentProbes = getProbes(id, num) { tracker ->
+        PackedAgentProbes(probeCount, classId = id, tracker = tracker)
+    } as PackedAgentProbes
 
     override fun addClassMethodsMetadata(classId: Long, methodsMetadata: ClassMethodsMetadata) {
         classMethodsMetadata[classId] = methodsMetadata
@@ -58,9 +101,27 @@ open class CoverageManager(
         return threadCoverageRecorder.getUnreleased() + globalCoverageRecorder.getUnreleased()
     }
 
+    private inline fun getProbes(id: Long, num: Int, probes: (DirtyClassTracker?) -> AgentProbes): AgentProbes {
+        val coverage: ContextCoverage = threadCoverageRecorder.takeIf { threadRecording }?.getContext()
+            ?: globalCoverageRecorder.getContext()
+        val execDatum = coverage.execData.getOrPut(num, id) {
+            ExecDatum(
+                id = id,
+                probes = probes(coverage.execData.dirtyClassTracker),
+                sessionId = coverage.context.sessionId,
+                testId = coverage.context.testId
+            )
+        }
+        return execDatum.probes
+    }
+
 }
 
+internal val drillExecDataPool = BoundedExecDataPool()
+
 /**
  * The probes proxy MUST be a Kotlin singleton object
  */
-internal object DrillCoverageManager : CoverageManager()
\ No newline at end of file
+internal object DrillCoverageManager : CoverageManager(
+    threadCoverageRecorder = ThreadCoverageRecorder(drillExecDataPool)
+)
\ No newline at end of file
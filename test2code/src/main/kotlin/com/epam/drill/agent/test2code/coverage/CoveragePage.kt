@@ -0,0 +1,140 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import kotlinx.serialization.SerializationStrategy
+import kotlinx.serialization.builtins.nullable
+import kotlinx.serialization.builtins.serializer
+import kotlinx.serialization.descriptors.SerialDescriptor
+import kotlinx.serialization.descriptors.buildClassSerialDescriptor
+import kotlinx.serialization.descriptors.listSerialDescriptor
+import kotlinx.serialization.encoding.Encoder
+import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.test2code.common.api.BitSetSerializer
+import com.epam.drill.agent.test2code.common.api.ProbesEncoding
+
+/**
+ * A page of coverage referencing exec data of classes instead of holding copies of method probes.
+ *
+ * It's serialized by [CoveragePageSerializer] to the same JSON as
+ * [com.epam.drill.agent.test2code.common.transport.CoveragePayload],
+ * method coverage entries are written straight from [ExecDatum] probes, methods without covered probes are skipped.
+ */
+class CoveragePage(
+    val groupId: String,
+    val appId: String,
+    val instanceId: String,
+    val commitSha: String?,
+    val buildVersion: String?,
+    val execData: List<ExecDatum>,
+    val classMethodsMetadata: Map<Long, ClassMethodsMetadata>,
+)
+
+/**
+ * @param probesEncoding the encoding of method probes
+ */
+class CoveragePageSerializer(probesEncoding: ProbesEncoding) : SerializationStrategy<CoveragePage> {
+    private val methodCoverageListSerializer = MethodCoverageListSerializer(probesEncoding)
+
+    override val descriptor: SerialDescriptor = buildClassSerialDescriptor("CoveragePayload") {
+        element("groupId", String.serializer().descriptor)
+        element("appId", String.serializer().descriptor)
+        element("instanceId", String.serializer().descriptor)
+        element("commitSha", String.serializer().nullable.descriptor)
+        element("buildVersion", String.serializer().nullable.descriptor)
+        element("coverage", methodCoverageListSerializer.descriptor)
+    }
+
+    override fun serialize(encoder: Encoder, value: CoveragePage) {
+        val composite = encoder.beginStructure(descriptor)
+        composite.encodeStringElement(descriptor, 0, value.groupId)
+        composite.encodeStringElement(descriptor, 1, value.appId)
+        composite.encodeStringElement(descriptor, 2, value.instanceId)
+        composite.encodeNullableSerializableElement(descriptor, 3, String.serializer(), value.commitSha)
+        composite.encodeNullableSerializableElement(descriptor, 4, String.serializer(), value.buildVersion)
+        composite.encodeSerializableElement(descriptor, 5, methodCoverageListSerializer, value)
+        composite.endStructure(descriptor)
+    }
+}
+
+/**
+ * Writes methods of all classes of the page as a list of
+ * [com.epam.drill.agent.test2code.common.api.MethodCoverage] entries
+ */
+private class MethodCoverageListSerializer(probesEncoding: ProbesEncoding) : SerializationStrategy<CoveragePage> {
+    private val methodCoverageSerializer = MethodCoverageSerializer(probesEncoding)
+
+    override val descriptor: SerialDescriptor = listSerialDescriptor(methodCoverageSerializer.descriptor)
+
+    override fun serialize(encoder: Encoder, value: CoveragePage) {
+        val methodsCount = value.execData.sumOf { value.classMethodsMetadata[it.id]?.countCovered(it.probes) ?: 0 }
+        val composite = encoder.beginCollection(descriptor, methodsCount)
+        val method = MethodCursor()
+        var index = 0
+        value.execData.forEach { datum ->
+            value.classMethodsMetadata[datum.id]?.forEach { (signature, metadata) ->
+                if (!metadata.isCovered(datum.probes)) return@forEach
+                method.datum = datum
+                method.signature = signature
+                method.metadata = metadata
+                composite.encodeSerializableElement(descriptor, index++, methodCoverageSerializer, method)
+            }
+        }
+        composite.endStructure(descriptor)
+    }
+}
+
+private class MethodCoverageSerializer(private val probesEncoding: ProbesEncoding) : SerializationStrategy<MethodCursor> {
+
+    override val descriptor: SerialDescriptor = buildClassSerialDescriptor("MethodCoverage") {
+        element("signature", String.serializer().descriptor)
+        element("bodyChecksum", String.serializer().descriptor)
+        element("testId", String.serializer().nullable.descriptor)
+        element("testSessionId", String.serializer().nullable.descriptor)
+        element("stringProbes", BitSetSerializer.descriptor)
+    }
+
+    override fun serialize(encoder: Encoder, value: MethodCursor) {
+        val probes = value.datum.probes.slice(value.metadata.probesStartPos, value.metadata.probesCount)
+        val composite = encoder.beginStructure(descriptor)
+        composite.encodeStringElement(descriptor, 0, value.signature)
+        composite.encodeStringElement(descriptor, 1, value.metadata.bodyChecksum)
+        composite.encodeStringElement(descriptor, 2, value.datum.testId)
+        composite.encodeStringElement(descriptor, 3, value.datum.sessionId)
+        composite.encodeStringElement(descriptor, 4, probesEncoding.encode(probes.length) { probes[it] })
+        composite.endStructure(descriptor)
+    }
+}
+
+/**
+ * @return the count of methods with covered probes
+ */
+fun ClassMethodsMetadata.countCovered(probes: AgentProbes): Int = values.count { it.isCovered(probes) }
+
+/**
+ * @return true if the method has covered probes
+ */
+fun ClassMethodMetadata.isCovered(probes: AgentProbes): Boolean =
+    probes.containCovered(probesStartPos, probesStartPos + probesCount)
+
+/**
+ * A method of the page being serialized, reused for all methods to not allocate an object per method
+ */
+private class MethodCursor {
+    lateinit var datum: ExecDatum
+    lateinit var signature: String
+    lateinit var metadata: ClassMethodMetadata
+}
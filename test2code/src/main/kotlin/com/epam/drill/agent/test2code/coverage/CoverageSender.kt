@@ -20,10 +20,10 @@ import java.util.concurrent.TimeUnit
 import mu.KotlinLogging
 import com.epam.drill.agent.common.transport.AgentMessageDestination
 import com.epam.drill.agent.common.transport.AgentMessageSender
-import com.epam.drill.agent.test2code.common.api.MethodCoverage
-import com.epam.drill.agent.test2code.common.api.toBitSet
-import com.epam.drill.agent.test2code.common.transport.CoveragePayload
-import kotlinx.serialization.KSerializer
+import com.epam.drill.agent.test2code.common.api.DeltaMethodCoverage
+import com.epam.drill.agent.test2code.common.api.ProbesEncoding
+import com.epam.drill.agent.test2code.common.transport.DeltaCoveragePayload
+import kotlinx.serialization.SerializationStrategy
 import java.util.concurrent.ConcurrentHashMap
 
 interface CoverageSender {
@@ -42,13 +42,19 @@ class IntervalCoverageSender(
     private val sender: AgentMessageSender = StubSender(),
     private val collectReleasedProbes: () -> Sequence<ExecDatum> = { emptySequence() },
     private val collectUnreleasedProbes: () -> Sequence<ExecDatum> = { emptySequence() },
-    private val classMethodsMetadata: ConcurrentHashMap<Long, ClassMethodsMetadata>
+    private val classMethodsMetadata: ConcurrentHashMap<Long, ClassMethodsMetadata>,
+    private val sentProbes: SentProbes? = null,
+    private val awaitClassMethodsMetadata: (timeoutMs: Long) -> Boolean = { true },
+    probesEncoding: ProbesEncoding = ProbesEncoding.BIT_STRING,
 ) : CoverageSender {
     private val scheduledThreadPool = Executors.newSingleThreadScheduledExecutor { runnable ->
         Thread(runnable, "drill-coverage-sender").apply { isDaemon = true }
     }
     private val destination = AgentMessageDestination("POST", "coverage")
+    private val deltaDestination = AgentMessageDestination("POST", "coverage/delta")
+    private val coveragePageSerializer = CoveragePageSerializer(probesEncoding)
     private val logger = KotlinLogging.logger {}
+    private var pendingProbes = emptyList<ExecDatum>()
 
     override fun startSendingCoverage() {
         scheduledThreadPool.scheduleAtFixedRate(
@@ -67,8 +73,10 @@ class IntervalCoverageSender(
     }
 
     override fun stopSendingCoverage(remainingMs: Long) {
-        sendProbes(collectReleasedProbes())
-        sendProbes(collectUnreleasedProbes())
+        sendProbes(collectReleasedProbes(), remainingMs)
+        sendProbes(collectUnreleasedProbes(), remainingMs)
+        if (pendingProbes.isNotEmpty())
+            logger.warn { "Coverage of ${pendingProbes.size} exec data is not sent, metadata of their classes is not calculated in ${remainingMs}ms" }
         scheduledThreadPool.shutdown()
         if (remainingMs > 0 && !scheduledThreadPool.awaitTermination(remainingMs, TimeUnit.MILLISECONDS)) {
             logger.warn { "Coverage sending scheduler did not stop within ${remainingMs}ms; leaving it for JVM exit." }
@@ -77,45 +85,109 @@ class IntervalCoverageSender(
     }
 
     /**
-     * Create a function which sends chunks of test coverage to the admin part of the plugin
-     * @return the function of sending test coverage
+     * Create a function which sends chunks of test coverage to the admin part of the plugin.
+     * Exec data of the same session, test and class are merged before sending, see [coalesce].
+     * Exec data are sent only after metadata of their classes have been added, see [awaitClassMethodsMetadata].
+     * Exec data of classes which metadata is still being calculated are kept until the next sending.
+     * @param dataToSend exec data to send
+     * @param awaitMs max time to wait for metadata of classes
      * @features Coverage data sending
      */
-    private fun sendProbes(dataToSend: Sequence<ExecDatum>) {
+    @Synchronized
+    private fun sendProbes(dataToSend: Sequence<ExecDatum>, awaitMs: Long = intervalMs) {
+        // metadata of classes instrumented before sending may still be calculated
+        val metadataCalculated = awaitClassMethodsMetadata(awaitMs)
+        val notReadyProbes = ArrayList<ExecDatum>()
+        val coalescedData = (pendingProbes.asSequence() + dataToSend)
+            .filter {
+                val hasMetadata = classMethodsMetadata.containsKey(it.id)
+                // if all metadata are calculated, classes without metadata don't have any methods to send
+                if (!hasMetadata && !metadataCalculated) notReadyProbes.add(it)
+                hasMetadata
+            }
+            .coalesce()
+        if (sentProbes != null)
+            sendDeltaProbes(coalescedData, sentProbes)
+        else
+            sendFullProbes(coalescedData)
+        pendingProbes = notReadyProbes
+    }
+
+    /**
+     * Send probes of covered methods of classes, splitting them into pages at class boundaries.
+     * Method coverage is serialized straight from exec data, see [CoveragePageSerializer],
+     * so only one page of exec data references is held at a time.
+     * @features Coverage data sending
+     */
+    private fun sendFullProbes(dataToSend: Sequence<ExecDatum>) {
+        var page = ArrayList<ExecDatum>()
+        var pageMethodsCount = 0
+        dataToSend.forEach {
+            val methodsCount = classMethodsMetadata[it.id]?.countCovered(it.probes) ?: 0
+            if (methodsCount == 0) return@forEach
+            if (pageMethodsCount > 0 && pageMethodsCount + methodsCount > pageSize) {
+                sendPage(page)
+                page = ArrayList()
+                pageMethodsCount = 0
+            }
+            page.add(it)
+            pageMethodsCount += methodsCount
+        }
+        if (page.isNotEmpty()) sendPage(page)
+    }
+
+    private fun sendPage(execData: List<ExecDatum>) = sender.send(destination, CoveragePage(
+        groupId = groupId,
+        appId = appId,
+        instanceId = instanceId,
+        commitSha = commitSha,
+        buildVersion = buildVersion,
+        execData = execData,
+        classMethodsMetadata = classMethodsMetadata
+    ), coveragePageSerializer)
+
+    /**
+     * Send only probes covered since the previous sending of the same session, test and class.
+     * Probes of a page which has not been delivered are rolled back, so they are sent once again.
+     * @features Coverage data sending
+     */
+    private fun sendDeltaProbes(dataToSend: Sequence<ExecDatum>, sentProbes: SentProbes) {
         dataToSend
             .flatMap {
                 classMethodsMetadata[it.id]
                     ?.mapNotNull { (signature, metadata) ->
-                        val methodProbes = it.probes.values.copyOfRange(
-                            metadata.probesStartPos,
-                            metadata.probesStartPos + metadata.probesCount
-                        ).toBitSet()
+                        val newProbes = sentProbes.pollNew(it, metadata.probesStartPos, metadata.probesCount)
 
-                        if (methodProbes.isEmpty) null
-                        else MethodCoverage(
+                        if (newProbes.isEmpty()) null
+                        else DeltaMethodCoverage(
                             signature = signature,
                             bodyChecksum = metadata.bodyChecksum,
                             testId = it.testId,
                             testSessionId = it.sessionId,
-                            stringProbes = methodProbes
-                        )
+                            probesCount = metadata.probesCount,
+                            newProbes = newProbes
+                        ) to { sentProbes.rollback(it, metadata.probesStartPos, newProbes) }
                     }
                     ?.asSequence()
                     ?: emptySequence()
             }
             .chunked(pageSize)
-            .forEach { sender.send(destination, CoveragePayload(
-                groupId = groupId,
-                appId = appId,
-                instanceId = instanceId,
-                commitSha = commitSha,
-                buildVersion = buildVersion,
-                coverage = it
-            ), CoveragePayload.serializer()) }
+            .forEach { page ->
+                sender.send(deltaDestination, DeltaCoveragePayload(
+                    groupId = groupId,
+                    appId = appId,
+                    instanceId = instanceId,
+                    commitSha = commitSha,
+                    buildVersion = buildVersion,
+                    coverage = page.map { it.first }
+                ), DeltaCoveragePayload.serializer()) { delivered ->
+                    if (!delivered) page.forEach { it.second() }
+                }
+            }
     }
 
 }
 
 private class StubSender : AgentMessageSender {
-    override fun <T> send(destination: AgentMessageDestination, message: T, serializer: KSerializer<T>) {}
+    override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) {}
 }
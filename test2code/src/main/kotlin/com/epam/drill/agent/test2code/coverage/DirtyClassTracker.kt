@@ -0,0 +1,62 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.jacoco.DirtyProbesTracker
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Tracks classes whose probes have been hit since they were last polled,
+ * so that polling costs depend on new coverage rather than on the number of loaded classes.
+ *
+ * Probes of tracked exec data must be created with this tracker and the class id.
+ */
+class DirtyClassTracker : DirtyProbesTracker {
+    private val trackedExecData = ConcurrentHashMap<ClassId, ExecDatum>()
+    private val dirtyExecData = ConcurrentHashMap<ClassId, ExecDatum>()
+
+    /**
+     * Start tracking exec datum. A newly tracked exec datum is considered dirty.
+     * @param datum the exec datum
+     */
+    fun track(datum: ExecDatum) {
+        trackedExecData[datum.id] = datum
+        dirtyExecData[datum.id] = datum
+    }
+
+    override fun markDirty(classId: Long) {
+        trackedExecData[classId]?.let { dirtyExecData[classId] = it }
+    }
+
+    /**
+     * Take exec data that have been hit since the previous poll.
+     * Dirty flags are reset before exec data are returned,
+     * so hits made while the caller reads probes are reported on the next poll.
+     * @return the dirty exec data
+     */
+    fun poll(): List<ExecDatum> {
+        if (dirtyExecData.isEmpty()) return emptyList()
+        val polled = ArrayList<ExecDatum>(dirtyExecData.size)
+        val iterator = dirtyExecData.values.iterator()
+        while (iterator.hasNext()) {
+            val datum = iterator.next()
+            iterator.remove()
+            datum.probes.clearDirty()
+            polled.add(datum)
+        }
+        return polled
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+/**
+ * Merge exec data of the same session, test and class into a single exec datum with OR-ed probes,
+ * e.g. exec data of many requests of one test.
+ *
+ * An exec datum without duplicates is returned as is, merged ones are copied, so the source probes are not modified.
+ * @return the coalesced exec data in the order of first occurrence
+ */
+fun Sequence<ExecDatum>.coalesce(): Sequence<ExecDatum> {
+    val coalesced = LinkedHashMap<CoalescingKey, ExecDatum>()
+    val copied = HashSet<CoalescingKey>()
+    forEach { datum ->
+        val key = CoalescingKey(datum.sessionId, datum.testId, datum.id)
+        val existing = coalesced[key]
+        if (existing == null) {
+            coalesced[key] = datum
+            return@forEach
+        }
+        val target = if (copied.add(key))
+            existing.copy(probes = existing.probes.copy()).also { coalesced[key] = it }
+        else
+            existing
+        target.probes.merge(datum.probes)
+    }
+    return coalesced.values.asSequence()
+}
+
+private data class CoalescingKey(
+    val sessionId: String,
+    val testId: String,
+    val classId: ClassId,
+)
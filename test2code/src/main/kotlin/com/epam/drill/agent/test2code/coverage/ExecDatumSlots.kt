@@ -0,0 +1,67 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+private const val PAGE_BITS = 10
+private const val PAGE_SIZE = 1 shl PAGE_BITS
+private const val PAGE_MASK = PAGE_SIZE - 1
+private const val PAGES_COUNT = 1024
+private const val CAPACITY = PAGE_SIZE * PAGES_COUNT
+
+/**
+ * Lock-free table of exec data indexed by the class number assigned by [DrillInstrumenter].
+ *
+ * Class numbers are dense and start from 1, so the table is a two-level array:
+ * pages of [PAGE_SIZE] slots are allocated on the first write, nothing is ever resized or locked.
+ * The page directory is allocated on the first write as well, so exec data which are only merged or sent,
+ * and never looked up by the class number, don't pay for it.
+ * Class numbers beyond [CAPACITY] are not stored, callers must fall back to the class id lookup.
+ */
+internal class ExecDatumSlots {
+    private val pagesRef = AtomicReference<AtomicReferenceArray<AtomicReferenceArray<ExecDatum?>?>?>()
+
+    /**
+     * Get exec datum from the slot
+     * @param num the class number
+     * @return the exec datum or null if the slot is empty
+     */
+    operator fun get(num: Int): ExecDatum? {
+        if (num < 0 || num >= CAPACITY) return null
+        return pagesRef.get()?.get(num ushr PAGE_BITS)?.get(num and PAGE_MASK)
+    }
+
+    /**
+     * Put exec datum into the slot, racing writers are allowed to overwrite each other
+     * @param num the class number
+     * @param datum the exec datum
+     */
+    operator fun set(num: Int, datum: ExecDatum) {
+        if (num < 0 || num >= CAPACITY) return
+        val pages = pagesRef.get() ?: AtomicReferenceArray<AtomicReferenceArray<ExecDatum?>?>(PAGES_COUNT).let {
+            pagesRef.compareAndSet(null, it)
+            pagesRef.get()!!
+        }
+        val index = num ushr PAGE_BITS
+        val page = pages.get(index) ?: AtomicReferenceArray<ExecDatum?>(PAGE_SIZE).let {
+            pages.compareAndSet(index, null, it)
+            pages.get(index)!!
+        }
+        page.lazySet(num and PAGE_MASK, datum)
+    }
+}
@@ -15,11 +15,16 @@
  */
 package com.epam.drill.agent.test2code.coverage
 
-import com.epam.drill.agent.jacoco.AgentProbes
-
+/**
+ * Recorder of the ambient coverage, which is collected when no test context is set.
+ *
+ * Only classes hit since the previous poll are visited on [pollRecorded].
+ */
 class GlobalCoverageRecorder: ICoverageRecorder {
-    private val globalExecData: ExecData = ExecData()
+    private val dirtyClassTracker: DirtyClassTracker = DirtyClassTracker()
+    private val globalExecData: ExecData = ExecData(dirtyClassTracker)
     private val sentGlobalExecData: ExecData = ExecData()
+    private val globalCoverage: ContextCoverage = ContextCoverage(CONTEXT_AMBIENT, globalExecData)
 
     override fun startRecording(sessionId: String?, testId: String?) {
         // do nothing
@@ -30,16 +35,19 @@ class GlobalCoverageRecorder: ICoverageRecorder {
     }
 
     override fun getContext(): ContextCoverage {
-        return ContextCoverage(CONTEXT_AMBIENT, globalExecData)
+        return globalCoverage
     }
 
     override fun pollRecorded(): Sequence<ExecDatum> {
+        val dirtyExecData = dirtyClassTracker.poll()
+        if (dirtyExecData.isEmpty())
+            return emptySequence()
         val unsentExecData = ExecData()
-        globalExecData.forEach { (key, value) ->
-            sentGlobalExecData.compute(key) { _, oldValue ->
+        dirtyExecData.forEach { value ->
+            sentGlobalExecData.compute(value.id) { _, oldValue ->
                 if (oldValue?.equals(value) != true) {
-                    val copiedValue = value.copy(probes = AgentProbes(values = value.probes.values.copyOf()))
-                    unsentExecData[key] = copiedValue
+                    val copiedValue = value.copy(probes = value.probes.copy())
+                    unsentExecData[value.id] = copiedValue
                     copiedValue
                 } else
                     oldValue
@@ -22,7 +22,9 @@ import com.epam.drill.agent.jacoco.DrillClassProbesAdapter
 import com.epam.drill.agent.jacoco.DrillDuplicateFrameEliminator
 import com.epam.drill.agent.jacoco.DrillMethodInstrumenter
 import com.epam.drill.agent.test2code.classparsing.ClassProbeCounter
+import com.epam.drill.agent.test2code.classparsing.InstrumentingProbeCounter
 import com.epam.drill.agent.test2code.classparsing.calculateMethodsChecksums
+import com.epam.drill.agent.test2code.common.api.AstMethod
 import org.jacoco.core.internal.data.CRC64
 import org.jacoco.core.internal.flow.*
 import org.jacoco.core.internal.instr.*
@@ -32,23 +34,198 @@ import java.util.concurrent.atomic.AtomicInteger
 
 private val classCounter = AtomicInteger(0)
 
+/**
+ * Value of the probe count constant emitted while the class is being instrumented in a single pass.
+ * It's replaced with the real probe count in the constant pool of the instrumented class.
+ */
+internal const val PROBE_COUNT_PLACEHOLDER = 0x5EEDC0DE
+
+/**
+ * Value of the class number constant emitted while the class is being instrumented for [InstrumentationCache].
+ * It gets its own entry in the constant pool, so the class number can be replaced in cached bytes
+ * without changing other constants which may be equal to the class number.
+ */
+internal const val CLASS_NUMBER_PLACEHOLDER = 0x5EEDC1A5
+
+/**
+ * Name of the static field keeping class probes, added by [DrillStaticProbeStrategy].
+ */
+private const val PROBES_FIELD_NAME = "\$drillProbes"
+
+/**
+ * Name of the static method initializing [PROBES_FIELD_NAME], added by [DrillStaticProbeStrategy].
+ */
+private const val PROBES_INIT_METHOD_NAME = "\$drillInit"
+
+/**
+ * Instruments classes with Drill4J probes.
+ *
+ * By default, probes are counted in the same pass over the class bytes as the class is instrumented.
+ * The probe count is emitted as a placeholder constant and patched in the constant pool of the instrumented class.
+ * If [singlePass] is false or the class already has a constant equal to the placeholder,
+ * probes are counted in a separate pass before instrumentation.
+ * In both cases method body checksums are calculated by a separate BCEL parse of the initial class bytes
+ * (see [calculateMethodsChecksums]), since they must stay identical to the checksums of scanned classes,
+ * so a class instrumented in a single pass is still read twice.
+ *
+ * If [cache] is set, classes instrumented in a single pass are stored in it,
+ * and classes cached by previous starts are taken from it with only the class number replaced.
+ *
+ * If [staticProbes] is true, probes of a class are requested from [probesProxy] only once
+ * and kept in a static field of the class, see [DrillStaticProbeStrategy].
+ *
+ * If [methodEntryProbesOnly] is true, each method gets a single probe at its entry instead of probes at branches.
+ *
+ * If [checksumExecutor] is set, method body checksums are calculated by it, and class methods metadata
+ * are added to [probesProxy] once the checksums are ready. Otherwise, they are calculated on instrumentation.
+ */
 class DrillInstrumenter(
     private val probesProxy: IProbesProxy,
+    private val packedProbes: Boolean = false,
+    private val singlePass: Boolean = true,
+    private val cache: InstrumentationCache? = null,
+    private val staticProbes: Boolean = false,
+    private val methodEntryProbesOnly: Boolean = false,
+    private val checksumExecutor: ChecksumExecutor? = null,
 ) : Instrumenter {
 
     private val logger = KotlinLogging.logger {}
 
     override fun instrument(className: String, initialBytes: ByteArray): ByteArray? = try {
-        val version = InstrSupport.getMajorVersion(initialBytes)
         val classId = CRC64.classId(initialBytes)
+        val cachedClass = cache?.get(classId)
+        if (cachedClass != null) {
+            fromCache(classId, cachedClass)
+        } else {
+            val reader = InstrSupport.classReaderFor(initialBytes)
+            val writer = if (singlePass) classWriter(reader) else null
+            // the placeholder can't be patched if the class has an equal constant already
+            val probeCountIndex = writer?.newConst(PROBE_COUNT_PLACEHOLDER)?.takeIf { it >= reader.itemCount }
+            if (writer != null && probeCountIndex != null) {
+                instrumentInSinglePass(className, initialBytes, classId, reader, writer, probeCountIndex)
+            } else {
+                instrumentInTwoPasses(className, initialBytes, classId, reader)
+            }
+        }
+    } catch (e: Exception) {
+        logger.error { "Error instrumenting $className: ${e.message} ${e.stackTraceToString()}" }
+        null
+    }
+
+    private fun instrumentInSinglePass(
+        className: String,
+        initialBytes: ByteArray,
+        classId: Long,
+        reader: ClassReader,
+        writer: ClassWriter,
+        probeCountIndex: Int
+    ): ByteArray {
+        val genId = classCounter.incrementAndGet()
+        // the class number can be replaced in cached bytes only if the placeholder gets its own constant
+        val genIdIndex = cache?.let { writer.newConst(CLASS_NUMBER_PLACEHOLDER) }?.takeIf { it >= reader.itemCount }
+        val strategy = probeArrayStrategy(
+            reader, className, classId, genIdIndex?.let { CLASS_NUMBER_PLACEHOLDER } ?: genId, PROBE_COUNT_PLACEHOLDER
+        )
+        val counter = InstrumentingProbeCounter(className, classInstrumenter(strategy, className, writer))
+        reader.accept(
+            DrillClassProbesAdapter(
+                counter,
+                InstrSupport.needsFrames(InstrSupport.getMajorVersion(initialBytes)),
+                methodEntryProbesOnly
+            ),
+            ClassReader.EXPAND_FRAMES
+        )
+        val instrumentedBytes = writer.toByteArray()
+        val instrumentedReader = ClassReader(instrumentedBytes)
+        instrumentedBytes.putInt(instrumentedReader.getItem(probeCountIndex), counter.count)
+        val classNumberOffset = genIdIndex?.let(instrumentedReader::getItem)
+        classNumberOffset?.let { instrumentedBytes.putInt(it, genId) }
+        addClassMethodsMetadata(classId, className, initialBytes, counter.methods) { classMethodsMetadata ->
+            if (classNumberOffset != null) cache?.put(
+                classId,
+                CachedClass(instrumentedBytes, classNumberOffset, classMethodsMetadata)
+            )
+        }
+        return instrumentedBytes
+    }
+
+    private fun fromCache(classId: Long, cachedClass: CachedClass): ByteArray {
+        probesProxy.addClassMethodsMetadata(classId, cachedClass.methodsMetadata)
+        return cachedClass.bytes.also { it.putInt(cachedClass.classNumberOffset, classCounter.incrementAndGet()) }
+    }
+
+    private fun instrumentInTwoPasses(
+        className: String,
+        initialBytes: ByteArray,
+        classId: Long,
+        reader: ClassReader
+    ): ByteArray {
+        val version = InstrSupport.getMajorVersion(initialBytes)
 
         //count probes before transformation
-        val reader = InstrSupport.classReaderFor(initialBytes)
         val counter = ClassProbeCounter(className)
-        reader.accept(DrillClassProbesAdapter(counter, false), 0)
+        reader.accept(DrillClassProbesAdapter(counter, false, methodEntryProbesOnly), 0)
+
+        addClassMethodsMetadata(classId, className, initialBytes, counter.methods)
 
+        val genId = classCounter.incrementAndGet()
+        val probeCount = counter.count
+        val strategy = probeArrayStrategy(reader, className, classId, genId, probeCount)
+        val writer = classWriter(reader)
+        val visitor = DrillClassProbesAdapter(
+            classInstrumenter(strategy, className, writer),
+            InstrSupport.needsFrames(version),
+            methodEntryProbesOnly
+        )
+        reader.accept(visitor, ClassReader.EXPAND_FRAMES)
+        return writer.toByteArray()
+    }
+
+    private fun classWriter(reader: ClassReader) = object : ClassWriter(reader, 0) {
+        override fun getCommonSuperClass(type1: String, type2: String): String = throw IllegalStateException()
+    }
+
+    private fun probeArrayStrategy(
+        reader: ClassReader,
+        className: String,
+        classId: Long,
+        genId: Int,
+        probeCount: Int
+    ): IProbeArrayStrategy {
+        val strategy = DrillProbeStrategy(probesProxy, className, classId, genId, probeCount, packedProbes)
+        // interfaces can't have private static fields
+        return if (staticProbes && reader.access and Opcodes.ACC_INTERFACE == 0) DrillStaticProbeStrategy(
+            strategy,
+            className,
+            probeImpl(),
+            InstrSupport.needsFrames(InstrSupport.getMajorVersion(reader))
+        ) else strategy
+    }
+
+    private fun classInstrumenter(strategy: IProbeArrayStrategy, className: String, writer: ClassWriter) =
+        DrillClassInstrumenter(strategy, className, writer, probeImpl())
+
+    private fun probeImpl() = if (packedProbes) PACKED_PROBE_IMPL else PROBE_IMPL
+
+    private fun addClassMethodsMetadata(
+        classId: Long,
+        className: String,
+        initialBytes: ByteArray,
+        methods: List<AstMethod>,
+        onAdded: (ClassMethodsMetadata) -> Unit = {}
+    ) {
+        val task = { onAdded(calculateClassMethodsMetadata(classId, className, initialBytes, methods)) }
+        if (checksumExecutor != null) checksumExecutor.submit(task) else task()
+    }
+
+    private fun calculateClassMethodsMetadata(
+        classId: Long,
+        className: String,
+        initialBytes: ByteArray,
+        methods: List<AstMethod>
+    ): ClassMethodsMetadata {
         val bodyChecksums = calculateMethodsChecksums(initialBytes, className)
-        val classMethodsMetadata: ClassMethodsMetadata = counter.methods.associate { m ->
+        val classMethodsMetadata: ClassMethodsMetadata = methods.associate { m ->
             val signature = "${m.classname}:${m.name}:${m.params}:${m.returnType}"
             signature to ClassMethodMetadata(
                 probesStartPos = m.probesStartPos,
@@ -56,42 +233,39 @@ class DrillInstrumenter(
                 bodyChecksum = bodyChecksums[signature] ?: "" // interface methods don't have a body
             )
         }
-
         probesProxy.addClassMethodsMetadata(classId, classMethodsMetadata)
-
-        val genId = classCounter.incrementAndGet()
-        val probeCount = counter.count
-        val strategy = DrillProbeStrategy(
-            probesProxy,
-            className,
-            classId,
-            genId,
-            probeCount
-        )
-        val writer = object : ClassWriter(reader, 0) {
-            override fun getCommonSuperClass(type1: String, type2: String): String = throw IllegalStateException()
-        }
-        val visitor = DrillClassProbesAdapter(
-            DrillClassInstrumenter(strategy, className, writer),
-            InstrSupport.needsFrames(version)
-        )
-        reader.accept(visitor, ClassReader.EXPAND_FRAMES)
-        writer.toByteArray()
-    } catch (e: Exception) {
-        logger.error { "Error instrumenting $className: ${e.message} ${e.stackTraceToString()}" }
-        null
+        return classMethodsMetadata
     }
 }
 
+private fun ByteArray.putInt(offset: Int, value: Int) {
+    this[offset] = (value ushr 24).toByte()
+    this[offset + 1] = (value ushr 16).toByte()
+    this[offset + 2] = (value ushr 8).toByte()
+    this[offset + 3] = value.toByte()
+}
+
 
 private class DrillProbeStrategy(
     private val probesProxy: IProbesProxy,
     private val className: String,
     private val classId: Long,
     private val number: Int,
-    private val probeCount: Int
+    private val probeCount: Int,
+    private val packedProbes: Boolean
 ) : IProbeArrayStrategy {
     override fun storeInstance(mv: MethodVisitor?, clinit: Boolean, variable: Int): Int = mv!!.run {
+        val stackSize = getProbes(this)
+        visitVarInsn(Opcodes.ASTORE, variable)
+        stackSize
+    }
+
+    /**
+     * Emit the call of the probes proxy leaving the class probes on the stack
+     * @param mv the method visitor
+     * @return the max stack size of the emitted code
+     */
+    fun getProbes(mv: MethodVisitor): Int = mv.run {
         val drillClassName = probesProxy.javaClass.name.replace('.', '/')
         visitFieldInsn(Opcodes.GETSTATIC, drillClassName, "INSTANCE", "L$drillClassName;")
         // Stack[0]: Lcom/epam/drill/agent/jacoco/Stuff;
@@ -100,11 +274,13 @@ private class DrillProbeStrategy(
         visitLdcInsn(number)
         visitLdcInsn(className)
         visitLdcInsn(probeCount)
-        visitMethodInsn(
+        if (packedProbes) visitMethodInsn(
+            Opcodes.INVOKEVIRTUAL, drillClassName, "invokePacked", "(JILjava/lang/String;I)L$PACKED_PROBE_IMPL;",
+            false
+        ) else visitMethodInsn(
             Opcodes.INVOKEVIRTUAL, drillClassName, "invoke", "(JILjava/lang/String;I)L$PROBE_IMPL;",
             false
         )
-        visitVarInsn(Opcodes.ASTORE, variable)
 
         6 //stack size
     }
@@ -114,10 +290,69 @@ private class DrillProbeStrategy(
     }
 }
 
+/**
+ * Keeps class probes in a static field of the instrumented class, like the JaCoCo `$jacocoData` field.
+ *
+ * Methods get the probes via a static init method, which calls the probes proxy only while the field is not set.
+ * So the probes proxy is called once per class, and probes are recorded to the same exec datum in any thread.
+ * The strategy adds members to the class, so it can't be used to retransform already loaded classes.
+ */
+private class DrillStaticProbeStrategy(
+    private val proxyStrategy: DrillProbeStrategy,
+    private val className: String,
+    private val probeImpl: String,
+    private val withFrames: Boolean
+) : IProbeArrayStrategy {
+    private val probesDesc = "L$probeImpl;"
+
+    override fun storeInstance(mv: MethodVisitor?, clinit: Boolean, variable: Int): Int = mv!!.run {
+        visitMethodInsn(Opcodes.INVOKESTATIC, className, PROBES_INIT_METHOD_NAME, "()$probesDesc", false)
+        visitVarInsn(Opcodes.ASTORE, variable)
+
+        1 //stack size
+    }
+
+    override fun addMembers(cv: ClassVisitor?, probeCount: Int) {
+        cv!!.visitField(
+            Opcodes.ACC_SYNTHETIC or Opcodes.ACC_PRIVATE or Opcodes.ACC_STATIC or Opcodes.ACC_TRANSIENT,
+            PROBES_FIELD_NAME,
+            probesDesc,
+            null,
+            null
+        ).visitEnd()
+        cv.visitMethod(
+            Opcodes.ACC_SYNTHETIC or Opcodes.ACC_PRIVATE or Opcodes.ACC_STATIC,
+            PROBES_INIT_METHOD_NAME,
+            "()$probesDesc",
+            null,
+            null
+        ).run {
+            visitCode()
+            visitFieldInsn(Opcodes.GETSTATIC, className, PROBES_FIELD_NAME, probesDesc)
+            visitInsn(Opcodes.DUP)
+            // Stack[1]: $probeImpl
+            // Stack[0]: $probeImpl
+            val initialized = Label()
+            visitJumpInsn(Opcodes.IFNONNULL, initialized)
+            visitInsn(Opcodes.POP)
+            val stackSize = proxyStrategy.getProbes(this)
+            visitInsn(Opcodes.DUP)
+            visitFieldInsn(Opcodes.PUTSTATIC, className, PROBES_FIELD_NAME, probesDesc)
+            // Stack[0]: $probeImpl
+            visitLabel(initialized)
+            if (withFrames) visitFrame(Opcodes.F_NEW, 0, arrayOf<Any>(), 1, arrayOf<Any>(probeImpl))
+            visitInsn(Opcodes.ARETURN)
+            visitMaxs(maxOf(stackSize, 2), 0)
+            visitEnd()
+        }
+    }
+}
+
 class DrillClassInstrumenter(
     private val probeArrayStrategy: IProbeArrayStrategy,
     private val clazzName: String,
-    cv: ClassVisitor
+    cv: ClassVisitor,
+    private val probeImpl: String = PROBE_IMPL
 ) : ClassInstrumenter(probeArrayStrategy, cv) {
 
     override fun visitMethod(
@@ -139,7 +374,8 @@ class DrillClassInstrumenter(
             name,
             desc,
             frameEliminator,
-            this.probeArrayStrategy
+            this.probeArrayStrategy,
+            probeImpl
         )
         return DrillMethodInstrumenter(
             probeVariableInserter,
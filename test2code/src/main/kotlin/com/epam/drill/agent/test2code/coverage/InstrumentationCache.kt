@@ -0,0 +1,299 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import mu.KotlinLogging
+import org.jacoco.core.internal.data.CRC64
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+private const val INDEX_FILE = "classes.idx"
+private const val DATA_FILE = "classes.dat"
+private const val FULL_MARKER_FILE = "classes.full"
+private const val INDEX_RECORD_SIZE = 20
+private const val STALE_KEY_DIR_AGE_MS = 7L * 24 * 60 * 60 * 1000
+
+/**
+ * Instrumented class stored in [InstrumentationCache]
+ * @param bytes the instrumented class bytes
+ * @param classNumberOffset offset of the class number constant in [bytes], which must be replaced on each start
+ * @param methodsMetadata the methods metadata of the class
+ */
+class CachedClass(
+    val bytes: ByteArray,
+    val classNumberOffset: Int,
+    val methodsMetadata: ClassMethodsMetadata
+)
+
+/**
+ * On-disk cache of instrumented classes keyed by class id.
+ *
+ * Entries of different agent versions and instrumentation options are kept in different subdirectories of the cache
+ * directory, so a subdirectory is named after the hash of the [key].
+ * Entries are appended to the data file, and their positions are appended to the index file.
+ * Both files are memory-mapped on opening, so entries stored by previous starts are read without copying the files.
+ * Entries stored after opening aren't visible until the next start, as they are instrumented by this start already.
+ *
+ * Entries are written by a background thread in batches, so class loading threads don't wait for the file lock.
+ * Entries not written yet are flushed by [close].
+ *
+ * The data file is limited by the max size, entries exceeding it are not stored.
+ * A full cache is rotated on the next opening: its files are truncated and filled again by the classes of that start,
+ * so entries of classes which are not loaded anymore don't stay forever.
+ * Subdirectories of other keys which have not been opened for a week are deleted on opening.
+ */
+class InstrumentationCache private constructor(
+    private val keyDir: File,
+    private val dataFile: RandomAccessFile,
+    private val indexFile: RandomAccessFile,
+    private val data: MappedByteBuffer,
+    private val positions: Map<ClassId, Long>,
+    private val maxSize: Long,
+) {
+    private val pending = ConcurrentLinkedQueue<Pair<ClassId, CachedClass>>()
+    private val writeScheduled = AtomicBoolean()
+    private val full = AtomicBoolean()
+    private val writer = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "drill-instrumentation-cache-writer").apply { isDaemon = true }
+    }
+
+    /**
+     * Get the cached class
+     * @param classId the class id of the initial class bytes
+     * @return the cached class or null if the class has not been cached by previous starts
+     */
+    fun get(classId: ClassId): CachedClass? = positions[classId]?.let { entryPosition ->
+        try {
+            val offset = (entryPosition ushr 32).toInt()
+            val size = entryPosition.toInt()
+            data.duplicate().run {
+                position(offset)
+                limit(offset + size)
+                readCachedClass()
+            }
+        } catch (e: Exception) {
+            logger.warn { "Error reading cached class $classId: ${e.message}" }
+            null
+        }
+    }
+
+    /**
+     * Store the instrumented class, so next starts don't need to instrument it.
+     * The class is written to the cache files on the background thread.
+     * @param classId the class id of the initial class bytes
+     * @param cachedClass the instrumented class
+     */
+    fun put(classId: ClassId, cachedClass: CachedClass) {
+        if (classId in positions || full.get() || writer.isShutdown) return
+        pending.add(classId to cachedClass)
+        if (writeScheduled.compareAndSet(false, true)) try {
+            writer.execute(::writePending)
+        } catch (e: RejectedExecutionException) {
+            logger.debug { "Instrumentation cache is closed, class $classId is not cached" }
+        }
+    }
+
+    /**
+     * Write classes stored so far and close the cache files
+     * @param timeoutMs the max time to wait for classes to be written
+     */
+    fun close(timeoutMs: Long = Long.MAX_VALUE) {
+        writer.shutdown()
+        if (!writer.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS))
+            logger.warn { "Instrumentation cache wasn't written in $timeoutMs ms, ${pending.size} classes are not cached" }
+        dataFile.close()
+        indexFile.close()
+    }
+
+    /**
+     * Write all pending classes under a single lock of the cache files.
+     * Data of the classes is written before their index records, so the index never refers to missing data.
+     */
+    private fun writePending() {
+        writeScheduled.set(false)
+        if (pending.isEmpty()) return
+        try {
+            val lock = indexFile.channel.lock()
+            try {
+                val dataOffset = dataFile.length()
+                val data = ByteArrayOutputStream()
+                val index = ByteArrayOutputStream()
+                DataOutputStream(index).run {
+                    while (true) {
+                        val (classId, cachedClass) = pending.poll() ?: break
+                        val entry = cachedClass.toEntryBytes()
+                        val offset = dataOffset + data.size()
+                        if (offset + entry.size > maxSize) {
+                            onFull(offset)
+                            break
+                        }
+                        data.write(entry)
+                        writeLong(classId)
+                        writeLong(offset)
+                        writeInt(entry.size)
+                    }
+                }
+                dataFile.seek(dataOffset)
+                dataFile.write(data.toByteArray())
+                indexFile.seek(indexFile.length())
+                indexFile.write(index.toByteArray())
+            } finally {
+                lock.release()
+            }
+        } catch (e: IOException) {
+            logger.warn { "Error caching instrumented classes: ${e.message}" }
+        }
+    }
+
+    private fun onFull(size: Long) {
+        pending.clear()
+        if (!full.compareAndSet(false, true)) return
+        logger.warn {
+            "Instrumentation cache $keyDir is full: $size of $maxSize bytes, next classes are not cached. " +
+                    "The cache will be rotated on the next start."
+        }
+        keyDir.resolve(FULL_MARKER_FILE).createNewFile()
+    }
+
+    companion object {
+        private val logger = KotlinLogging.logger {}
+
+        /**
+         * Open the cache for the given agent version and instrumentation options
+         * @param dir the cache directory
+         * @param key the agent version and instrumentation options
+         * @param maxSize the max size of the cache data file in bytes, it can't exceed 2 GB
+         * @return the cache or null if the cache directory can't be used
+         */
+        fun open(dir: File, key: String, maxSize: Long = Int.MAX_VALUE.toLong()): InstrumentationCache? = try {
+            val keyDir = dir.resolve(java.lang.Long.toHexString(CRC64.classId(key.toByteArray())))
+            keyDir.mkdirs()
+            keyDir.setLastModified(System.currentTimeMillis())
+            deleteStaleKeyDirs(dir, keyDir)
+            val dataFile = RandomAccessFile(keyDir.resolve(DATA_FILE), "rw")
+            val indexFile = RandomAccessFile(keyDir.resolve(INDEX_FILE), "rw")
+            val dataMaxSize = maxSize.coerceIn(0, Int.MAX_VALUE.toLong())
+            val lock = indexFile.channel.lock()
+            try {
+                val fullMarker = keyDir.resolve(FULL_MARKER_FILE)
+                if (fullMarker.exists() || dataFile.length() > dataMaxSize) {
+                    logger.info { "Instrumentation cache $keyDir is full: ${dataFile.length()} bytes, rotating it" }
+                    indexFile.setLength(0)
+                    dataFile.setLength(0)
+                    fullMarker.delete()
+                }
+                val dataSize = dataFile.length().coerceAtMost(dataMaxSize)
+                val data = dataFile.channel.map(FileChannel.MapMode.READ_ONLY, 0, dataSize)
+                val index = indexFile.channel.map(FileChannel.MapMode.READ_ONLY, 0, indexFile.length())
+                InstrumentationCache(keyDir, dataFile, indexFile, data, index.readPositions(dataSize), dataMaxSize).also {
+                    logger.info { "Instrumentation cache $keyDir opened with ${it.positions.size} classes" }
+                }
+            } finally {
+                lock.release()
+            }
+        } catch (e: IOException) {
+            logger.warn { "Instrumentation cache $dir can't be opened: ${e.message}" }
+            null
+        }
+
+        /**
+         * Delete subdirectories of other keys which have not been opened for [STALE_KEY_DIR_AGE_MS].
+         * Only subdirectories containing the cache files are deleted, so other files of the cache directory are kept.
+         */
+        private fun deleteStaleKeyDirs(dir: File, keyDir: File) {
+            val staleBefore = System.currentTimeMillis() - STALE_KEY_DIR_AGE_MS
+            dir.listFiles()?.filter {
+                it != keyDir && it.isDirectory && it.resolve(INDEX_FILE).isFile && it.lastModified() < staleBefore
+            }?.forEach { staleDir ->
+                val deleted = staleDir.listFiles()?.all { it.name !in setOf(INDEX_FILE, DATA_FILE, FULL_MARKER_FILE) || it.delete() } == true
+                if (deleted && staleDir.delete()) logger.info { "Stale instrumentation cache $staleDir deleted" }
+                else logger.debug { "Stale instrumentation cache $staleDir can't be deleted" }
+            }
+        }
+    }
+}
+
+/**
+ * Version of the agent code to be a part of the cache key.
+ * If the version isn't set in the jar manifest, the size and modification time of the jar are used instead.
+ */
+fun instrumenterVersion(): String = InstrumentationCache::class.java.run {
+    `package`?.implementationVersion
+        ?: protectionDomain?.codeSource?.location?.let { File(it.toURI()) }?.let { "${it.length()}-${it.lastModified()}" }
+        ?: "unknown"
+}
+
+/**
+ * Read positions of complete entries, packing the entry offset and size into a single long
+ */
+private fun ByteBuffer.readPositions(dataSize: Long): Map<ClassId, Long> {
+    val positions = HashMap<ClassId, Long>(remaining() / INDEX_RECORD_SIZE)
+    while (remaining() >= INDEX_RECORD_SIZE) {
+        val classId = long
+        val offset = long
+        val size = int
+        // an entry may be incomplete if the previous start was interrupted while storing it
+        if (offset + size <= dataSize) positions[classId] = (offset shl 32) or size.toLong()
+    }
+    return positions
+}
+
+private fun ByteBuffer.readCachedClass(): CachedClass {
+    val classNumberOffset = int
+    val methodsMetadata = HashMap<String, ClassMethodMetadata>()
+    repeat(int) {
+        methodsMetadata[readString()] = ClassMethodMetadata(
+            probesStartPos = int,
+            probesCount = int,
+            bodyChecksum = readString()
+        )
+    }
+    val bytes = ByteArray(int).also { get(it) }
+    return CachedClass(bytes, classNumberOffset, methodsMetadata)
+}
+
+private fun ByteBuffer.readString(): String = String(ByteArray(int).also { get(it) }, Charsets.UTF_8)
+
+private fun CachedClass.toEntryBytes(): ByteArray = ByteArrayOutputStream(bytes.size + 256).also { output ->
+    DataOutputStream(output).run {
+        writeInt(classNumberOffset)
+        writeInt(methodsMetadata.size)
+        methodsMetadata.forEach { (signature, metadata) ->
+            writeString(signature)
+            writeInt(metadata.probesStartPos)
+            writeInt(metadata.probesCount)
+            writeString(metadata.bodyChecksum)
+        }
+        writeInt(bytes.size)
+        write(bytes)
+    }
+}.toByteArray()
+
+private fun DataOutputStream.writeString(value: String) = value.toByteArray(Charsets.UTF_8).let {
+    writeInt(it.size)
+    write(it)
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.common.module.Instrumenter
+import mu.KotlinLogging
+import kotlin.concurrent.thread
+
+private const val RETRANSFORM_BATCH_SIZE = 100
+
+/**
+ * Defers instrumentation of classes until coverage collection is activated.
+ *
+ * Until [activate] is called, classes are loaded uninstrumented and only their names are recorded.
+ * On activation, the recorded classes are retransformed in batches on a background thread,
+ * so they pass through [instrument] once again and get instrumented.
+ *
+ * @param instrumenter the instrumenter of classes after activation
+ * @param retransform the retransformation of loaded classes by internal names and a batch size
+ */
+class LazyInstrumentation(
+    private val instrumenter: Instrumenter,
+    private val retransform: (classNames: Set<String>, batchSize: Int) -> Int,
+) : Instrumenter {
+    private val logger = KotlinLogging.logger {}
+    private val loadedClassNames = HashSet<String>()
+
+    @Volatile
+    private var active = false
+
+    override fun instrument(className: String, initialBytes: ByteArray): ByteArray? {
+        if (!active) synchronized(loadedClassNames) {
+            // checked again, classes loaded while activating must not be missed
+            if (!active) {
+                loadedClassNames.add(className)
+                return null
+            }
+        }
+        return instrumenter.instrument(className, initialBytes)
+    }
+
+    /**
+     * Instrument classes loaded from now on and retransform already loaded ones
+     * @return the thread retransforming loaded classes, or null if already activated
+     */
+    fun activate(): Thread? {
+        if (active) return null
+        val classNames = synchronized(loadedClassNames) {
+            if (active) return null
+            active = true
+            loadedClassNames.toSet().also { loadedClassNames.clear() }
+        }
+        logger.info { "Coverage collection activated, instrumenting ${classNames.size} loaded classes..." }
+        return thread(isDaemon = true, name = "drill-lazy-instrumentation") {
+            runCatching {
+                retransform(classNames, RETRANSFORM_BATCH_SIZE)
+            }.onSuccess {
+                logger.info { "Instrumented $it loaded classes" }
+            }.onFailure {
+                logger.error(it) { "Can't instrument loaded classes" }
+            }
+        }
+    }
+}
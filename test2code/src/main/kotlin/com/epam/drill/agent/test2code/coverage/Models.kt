@@ -21,7 +21,54 @@ import java.util.concurrent.ConcurrentHashMap
 typealias ClassId = Long
 typealias SessionId = String
 typealias TestId = String
-typealias ExecData = ConcurrentHashMap<ClassId, ExecDatum>
+
+/**
+ * Exec data of a single context mapped by class id.
+ *
+ * Exec data obtained via [getOrPut] with a class number are also kept in a slot table,
+ * so next lookups by the class number don't need to hash and box the class id.
+ *
+ * If [dirtyClassTracker] is set, exec data added via [put] or [putIfAbsent] are tracked by it,
+ * their probes must be created with the tracker.
+ */
+class ExecData(
+    val dirtyClassTracker: DirtyClassTracker? = null,
+) : ConcurrentHashMap<ClassId, ExecDatum>() {
+    private val slots = ExecDatumSlots()
+
+    override fun put(key: ClassId, value: ExecDatum): ExecDatum? =
+        super.put(key, value).also { dirtyClassTracker?.track(value) }
+
+    override fun putIfAbsent(key: ClassId, value: ExecDatum): ExecDatum? =
+        super.putIfAbsent(key, value).also { if (it == null) dirtyClassTracker?.track(value) }
+
+    /**
+     * Get exec datum by the class number assigned on instrumentation
+     * @param num the class number
+     * @param id the class id, used to check the slot
+     * @return the exec datum or null if the class has not been seen in this context yet
+     */
+    fun getSlot(num: Int, id: ClassId): ExecDatum? = slots[num]?.takeIf { it.id == id }
+
+    /**
+     * Get exec datum by the class id or put a default value, then remember it in the slot table
+     * @param num the class number assigned on instrumentation
+     * @param id the class id
+     * @param default a function that returns a default value
+     * @return the exec datum
+     */
+    inline fun getOrPut(num: Int, id: ClassId, default: () -> ExecDatum): ExecDatum =
+        getSlot(num, id) ?: getOrPut(id, default).also { putSlot(num, it) }
+
+    /**
+     * Remember exec datum in the slot table
+     * @param num the class number
+     * @param datum the exec datum
+     */
+    fun putSlot(num: Int, datum: ExecDatum) {
+        slots[num] = datum
+    }
+}
 
 /**
  * A class containing probes obtained from a specific test
@@ -16,6 +16,7 @@
 package com.epam.drill.agent.test2code.coverage
 
 import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.jacoco.PackedAgentProbes
 
 /**
  * Provides boolean array for the probe.
@@ -24,6 +25,7 @@ import com.epam.drill.agent.jacoco.AgentProbes
 
 interface IProbesProxy {
     fun invoke(id: ClassId, num: Int, name: String, probeCount: Int): AgentProbes
+    fun invokePacked(id: ClassId, num: Int, name: String, probeCount: Int): PackedAgentProbes
     fun addClassMethodsMetadata(classId: Long, methodsMetadata: ClassMethodsMetadata)
 }
 
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+private const val DEFAULT_MAX_ENTRIES = 100_000
+
+/**
+ * Probes already sent for each session, test and class, used by the delta coverage wire format.
+ *
+ * Keeps at most [maxEntries] classes, the least recently sent ones are evicted.
+ * Probes of an evicted class are sent once again, which the admin side tolerates, as coverage is merged.
+ * Probes which have not been delivered must be forgotten via [rollback], so they are sent once again.
+ */
+class SentProbes(private val maxEntries: Int = DEFAULT_MAX_ENTRIES) {
+    private val sent = LinkedHashMap<SentProbesKey, BooleanArray>(16, 0.75f, true)
+
+    /**
+     * Get covered probes of the method which have not been sent yet and remember them as sent
+     * @param datum the exec datum of the class
+     * @param fromIndex the index of the first probe of the method
+     * @param count the count of probes of the method
+     * @return ascending indices of newly covered probes, relative to [fromIndex]
+     */
+    @Synchronized
+    fun pollNew(datum: ExecDatum, fromIndex: Int, count: Int): IntArray {
+        val key = SentProbesKey(datum.sessionId, datum.testId, datum.id)
+        val sentProbes = sent[key]?.takeIf { it.size == datum.probes.size }
+            ?: BooleanArray(datum.probes.size).also {
+                sent[key] = it
+                if (sent.size > maxEntries) sent.remove(sent.keys.first())
+            }
+        val probes = datum.probes.slice(fromIndex, count)
+        if (probes.isEmpty()) return EMPTY_INDICES
+        var newCount = 0
+        probes.forEachCovered {
+            if (!sentProbes[fromIndex + it]) newCount++
+        }
+        if (newCount == 0) return EMPTY_INDICES
+        val newProbes = IntArray(newCount)
+        var n = 0
+        probes.forEachCovered {
+            if (!sentProbes[fromIndex + it]) {
+                sentProbes[fromIndex + it] = true
+                newProbes[n++] = it
+            }
+        }
+        return newProbes
+    }
+
+    /**
+     * Forget probes remembered as sent by [pollNew], e.g. if they have not been delivered
+     * @param datum the exec datum of the class
+     * @param fromIndex the index of the first probe of the method
+     * @param newProbes indices returned by [pollNew], relative to [fromIndex]
+     */
+    @Synchronized
+    fun rollback(datum: ExecDatum, fromIndex: Int, newProbes: IntArray) {
+        val sentProbes = sent[SentProbesKey(datum.sessionId, datum.testId, datum.id)]
+            ?.takeIf { it.size == datum.probes.size }
+            ?: return
+        newProbes.forEach { sentProbes[fromIndex + it] = false }
+    }
+
+    private data class SentProbesKey(
+        val sessionId: String,
+        val testId: String,
+        val classId: ClassId,
+    )
+}
+
+private val EMPTY_INDICES = IntArray(0)
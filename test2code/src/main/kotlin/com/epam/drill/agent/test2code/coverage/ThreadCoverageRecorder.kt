@@ -24,27 +24,24 @@ class ThreadCoverageRecorder(
     private val execDataPool: DataPool<ContextKey, ExecData> = ConcurrentDataPool()
 ) : ICoverageRecorder {
     private val logger = KotlinLogging.logger {}
-    private val context: ThreadLocal<ContextKey?> = TransmittableThreadLocal()
-    private val execData: ThreadLocal<ExecData?> = TransmittableThreadLocal()
+    private val coverage: ThreadLocal<ContextCoverage?> = TransmittableThreadLocal()
 
     override fun startRecording(sessionId: String?, testId: String?) {
-        stopRecording(context.get()?.sessionId ?: SESSION_CONTEXT_NONE, context.get()?.testId ?: TEST_CONTEXT_NONE)
+        stopRecording(coverage.get()?.context?.sessionId ?: SESSION_CONTEXT_NONE, coverage.get()?.context?.testId ?: TEST_CONTEXT_NONE)
         val ctx = ContextKey(sessionId ?: SESSION_CONTEXT_NONE, testId ?: TEST_CONTEXT_NONE)
-        context.set(ctx)
-        execData.set(execDataPool.getOrPut(
+        coverage.set(ContextCoverage(ctx, execDataPool.getOrPut(
             ctx,
             default = { ExecData() }
-        ))
+        )))
         logger.trace { "Test recording started (sessionId = $sessionId, testId = $testId, threadId = ${Thread.currentThread().id})." }
     }
 
     override fun stopRecording(sessionId: String?, testId: String?) {
-        execData.get()?.let { data ->
-            execDataPool.release(ContextKey(sessionId ?: SESSION_CONTEXT_NONE, testId ?: TEST_CONTEXT_NONE), data)
-            execData.remove()
+        coverage.get()?.let { data ->
+            execDataPool.release(ContextKey(sessionId ?: SESSION_CONTEXT_NONE, testId ?: TEST_CONTEXT_NONE), data.execData)
+            data.context.clear()
+            coverage.remove()
         }
-        context.get()?.clear()
-        context.remove()
         logger.trace { "Test recording stopped (sessionId = $sessionId, testId = $testId, threadId = ${Thread.currentThread().id})." }
     }
 
@@ -59,8 +56,12 @@ class ThreadCoverageRecorder(
         return execDataPool.getAll().values.flatMap { it.values }.filter { it.probes.containCovered() }.asSequence()
     }
 
+    /**
+     * Get the context coverage cached for the current thread in [startRecording],
+     * nothing is allocated here since it is called on every instrumented method invocation
+     */
     override fun getContext(): ContextCoverage? {
-        return context.get()?.takeIf { !it.isSessionEmpty() }?.let { ctx -> execData.get()?.let { ContextCoverage(ctx, it) } }
+        return coverage.get()?.takeIf { !it.context.isSessionEmpty() }
     }
 }
 
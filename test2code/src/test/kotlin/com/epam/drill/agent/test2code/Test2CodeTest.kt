@@ -0,0 +1,88 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code
+
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.reflect.KProperty
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlinx.serialization.SerializationStrategy
+import com.epam.drill.agent.common.AgentContext
+import com.epam.drill.agent.common.classloading.ClassRetransformation
+import com.epam.drill.agent.common.configuration.AgentConfiguration
+import com.epam.drill.agent.common.configuration.AgentMetadata
+import com.epam.drill.agent.common.configuration.AgentParameterDefinition
+import com.epam.drill.agent.common.configuration.AgentParameters
+import com.epam.drill.agent.common.configuration.BaseAgentParameterDefinition
+import com.epam.drill.agent.common.configuration.NullableAgentParameterDefinition
+import com.epam.drill.agent.common.configuration.ValidationError
+import com.epam.drill.agent.common.transport.AgentMessageDestination
+import com.epam.drill.agent.common.transport.AgentMessageSender
+import com.epam.drill.agent.test2code.configuration.Test2CodeParameterDefinitions
+
+class Test2CodeTest {
+
+    @Test
+    fun `given ambient only mode and lazy instrumentation, first request must activate instrumentation`() {
+        val retransformed = LinkedBlockingQueue<Set<String>>()
+        ClassRetransformation.register({ classNames, _ -> classNames.size.also { retransformed += classNames } }) {
+            emptySet()
+        }
+        val test2Code = Test2Code(
+            id = "test2code",
+            agentContext = NoContext,
+            sender = NoSender,
+            configuration = configurationOf(
+                Test2CodeParameterDefinitions.COVERAGE_MODE.name to "AMBIENT_ONLY",
+                Test2CodeParameterDefinitions.LAZY_INSTRUMENTATION.name to true,
+            )
+        )
+        assertNull(test2Code.instrument("foo/Bar", byteArrayOf()))
+
+        test2Code.processServerRequest()
+
+        assertEquals(setOf("foo/Bar"), retransformed.poll(10, TimeUnit.SECONDS))
+    }
+
+    private fun configurationOf(vararg values: Pair<String, Any>) = object : AgentConfiguration {
+        override val agentMetadata = AgentMetadata(groupId = "group", appId = "app", instanceId = "instance")
+        override val parameters = object : AgentParameters {
+            @Suppress("UNCHECKED_CAST")
+            override fun <T : Any> get(name: String): T? = values.toMap()[name] as T?
+
+            override fun <T : Any> get(definition: AgentParameterDefinition<T>): T =
+                get(definition.name) ?: definition.defaultValue!!
+
+            override fun <T : Any> getValue(ref: Any?, property: KProperty<*>): T? = get(property.name)
+
+            override fun <T : Any> get(definition: NullableAgentParameterDefinition<T>): T? = get(definition.name)
+
+            override fun define(vararg definitions: BaseAgentParameterDefinition<*>): List<ValidationError<*>> =
+                emptyList()
+        }
+    }
+
+    private object NoContext : AgentContext {
+        override fun invoke(): String? = null
+        override fun get(key: String): String? = null
+    }
+
+    private object NoSender : AgentMessageSender {
+        override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) {}
+    }
+}
@@ -15,8 +15,16 @@
  */
 package com.epam.drill.agent.test2code.classloading
 
+import java.io.ByteArrayOutputStream
+import java.nio.file.Files
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
 import kotlin.test.Test
 import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import com.epam.drill.agent.common.classloading.EntitySource
 
 class ClassLoadersScannerTest {
     @Test
@@ -104,4 +112,132 @@ class ClassLoadersScannerTest {
         assertEquals(4, classCount)
     }
 
+    @Test
+    fun `given several threads or central directory reading, scanClasses should scan nested archives in the same order`() {
+        val fixture = "com/example/fixture/classloading"
+        val war = Files.createTempFile("scanner", ".war").toFile().apply {
+            writeBytes(archiveOf(
+                "WEB-INF/classes/$fixture/Class2.class" to classBytes("$fixture/Class2"),
+                "WEB-INF/lib/lib1.jar" to archiveOf(
+                    "$fixture/Class3.class" to classBytes("$fixture/Class3"),
+                    "$fixture/sub/Class1.class" to classBytes("$fixture/sub/Class1"),
+                ),
+                "WEB-INF/lib/lib2.jar" to archiveOf(
+                    "$fixture/Class3.class" to classBytes("$fixture/Class3"),
+                    "$fixture/Class4.class" to classBytes("$fixture/Class4"),
+                    "$fixture/Class5.class" to classBytes("$fixture/Class5"),
+                    "$fixture/sub/Interface1.class" to classBytes("$fixture/sub/Interface1"),
+                ),
+            ))
+        }
+        val scan: (Int, Boolean) -> List<String> = { threads, readCentralDirectory ->
+            mutableListOf<String>().also { scanned ->
+                ClassLoadersScanner(
+                    packagePrefixes = listOf(fixture),
+                    classesBufferSize = 2,
+                    scanClassPaths = listOf(war.absolutePath),
+                    enableScanClassLoaders = false,
+                    scanThreads = threads,
+                    readCentralDirectory = readCentralDirectory,
+                    transfer = { classes -> classes.mapTo(scanned) { it.entityName() } }
+                ).scanClasses()
+            }
+        }
+
+        try {
+            val expected = listOf("Class2", "Class3", "sub/Class1", "Class4", "Class5", "sub/Interface1")
+                .map { "$fixture/$it" }
+            assertEquals(expected, scan(1, false))
+            assertEquals(expected, scan(4, false))
+            assertEquals(expected, scan(1, true))
+            assertEquals(expected, scan(4, true))
+        } finally {
+            war.delete()
+        }
+    }
+
+    @Test
+    fun `given stored nested archives, scanClasses should scan them via central directory`() {
+        val fixture = "com/example/fixture/classloading"
+        val jar = Files.createTempFile("scanner", ".jar").toFile().apply {
+            writeBytes(archiveOf(
+                "BOOT-INF/classes/$fixture/Class2.class" to classBytes("$fixture/Class2"),
+                "BOOT-INF/lib/lib1.jar" to archiveOf(
+                    "$fixture/Class3.class" to classBytes("$fixture/Class3"),
+                    "$fixture/sub/Class1.class" to classBytes("$fixture/sub/Class1"),
+                ),
+                "BOOT-INF/lib/lib2.jar" to archiveOf(
+                    "$fixture/Class4.class" to classBytes("$fixture/Class4"),
+                ),
+                stored = true
+            ))
+        }
+        val scanned = mutableListOf<String>()
+
+        try {
+            ClassLoadersScanner(
+                packagePrefixes = listOf(fixture),
+                classesBufferSize = 2,
+                scanClassPaths = listOf(jar.absolutePath),
+                enableScanClassLoaders = false,
+                readCentralDirectory = true,
+                transfer = { classes -> classes.mapTo(scanned) { it.entityName() } }
+            ).scanClasses()
+        } finally {
+            jar.delete()
+        }
+
+        assertEquals(listOf("Class2", "Class3", "sub/Class1", "Class4").map { "$fixture/$it" }, scanned)
+    }
+
+    @Test
+    fun `given parse function and several threads, scanClasses should transfer classes parsed by scanning threads`() {
+        val fixture = "com/example/fixture/classloading"
+        val jar = Files.createTempFile("scanner", ".jar").toFile().apply {
+            writeBytes(archiveOf(
+                "$fixture/Class2.class" to classBytes("$fixture/Class2"),
+                "$fixture/Class3.class" to classBytes("$fixture/Class3"),
+            ))
+        }
+        val scanned = mutableListOf<EntitySource>()
+
+        try {
+            ClassLoadersScanner(
+                packagePrefixes = listOf(fixture),
+                classesBufferSize = 5,
+                scanClassPaths = listOf(jar.absolutePath),
+                enableScanClassLoaders = false,
+                scanThreads = 2,
+                parse = { ParsedClassSource(it.entityName(), emptyList()) },
+                transfer = { classes -> scanned.addAll(classes) }
+            ).scanClasses()
+        } finally {
+            jar.delete()
+        }
+
+        assertEquals(listOf("$fixture/Class2", "$fixture/Class3"), scanned.map(EntitySource::entityName))
+        assertTrue(scanned.all { it is ParsedClassSource && it.bytes().isEmpty() })
+    }
+
+    private fun classBytes(name: String) = javaClass.classLoader.getResourceAsStream("$name.class")!!.readBytes()
+
+    private fun archiveOf(
+        vararg entries: Pair<String, ByteArray>,
+        stored: Boolean = false
+    ) = ByteArrayOutputStream().also { bytes ->
+        JarOutputStream(bytes).use { jar ->
+            entries.forEach { (name, content) ->
+                jar.putNextEntry(JarEntry(name).apply {
+                    if (stored) {
+                        method = ZipEntry.STORED
+                        size = content.size.toLong()
+                        crc = CRC32().apply { update(content) }.value
+                    }
+                })
+                jar.write(content)
+                jar.closeEntry()
+            }
+        }
+    }.toByteArray()
+
 }
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class ClassNameHashSetTest {
+
+    @Test
+    fun `add must return false for already added names`() {
+        val names = ClassNameHashSet()
+
+        assertTrue(names.add("com/example/Foo"))
+        assertTrue(names.add("com/example/Bar"))
+        assertFalse(names.add("com/example/Foo"))
+        assertEquals(2, names.size)
+        assertTrue("com/example/Bar" in names)
+        assertFalse("com/example/Baz" in names)
+    }
+
+    @Test
+    fun `given more names than initial capacity, all names must be kept`() {
+        val names = ClassNameHashSet()
+        val count = 100_000
+
+        repeat(count) { assertTrue(names.add("com/example/Class$it")) }
+        repeat(count) { assertFalse(names.add("com/example/Class$it")) }
+        assertEquals(count, names.size)
+    }
+}
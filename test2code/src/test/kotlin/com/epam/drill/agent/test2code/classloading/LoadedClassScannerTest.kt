@@ -0,0 +1,106 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+import com.epam.drill.agent.common.classloading.EntitySource
+
+class LoadedClassScannerTest {
+
+    private val fixture = "com/example/fixture/classloading"
+
+    @Test
+    fun `given loaded classes, scan must transfer classes matching package prefixes once`() {
+        val transferred = mutableListOf<EntitySource>()
+        val latch = CountDownLatch(1)
+        val scanner = LoadedClassScanner(listOf(fixture), 2, 60_000) {
+            transferred.addAll(it)
+            latch.countDown()
+        }
+
+        assertTrue(scanner.scan("$fixture/Class2", classBytes("$fixture/Class2")))
+        assertFalse(scanner.scan("$fixture/Class2", classBytes("$fixture/Class2")))
+        assertFalse(scanner.scan("com/example/Other", classBytes("$fixture/Class3")))
+        assertFalse(scanner.scan("$fixture/Class2\$Inner", classBytes("$fixture/Class3")))
+        assertTrue(scanner.scan("$fixture/Class3", classBytes("$fixture/Class3")))
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS))
+        assertEquals(listOf("$fixture/Class2", "$fixture/Class3"), transferred.map(EntitySource::entityName).sorted())
+        assertEquals(2, scanner.scannedClassesCount)
+    }
+
+    @Test
+    fun `given classes loaded before, scanLoadedClasses must retransform only not scanned classes`() {
+        val latch = CountDownLatch(1)
+        val scanner = LoadedClassScanner(listOf(fixture), 50, 10) { latch.countDown() }
+        scanner.scan("$fixture/Class2", classBytes("$fixture/Class2"))
+        val retransformed = mutableSetOf<String>()
+
+        val count = scanner.scanLoadedClasses(
+            setOf("$fixture/Class2", "$fixture/Class3", "$fixture/Class3\$Inner", "java/lang/String")
+        ) { classNames, _ ->
+            retransformed.addAll(classNames)
+            classNames.count { scanner.scan(it, classBytes(it)) }
+        }
+
+        assertEquals(setOf("$fixture/Class3"), retransformed)
+        assertEquals(1, count)
+        assertTrue(latch.await(10, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun `given classes retransformed for scanning, isScanOnly must be true only during their retransformation`() {
+        val scanner = LoadedClassScanner(listOf(fixture), 50, 60_000) {}
+        val scanOnly = mutableListOf<Boolean>()
+
+        scanner.scanLoadedClasses(setOf("$fixture/Class2")) { classNames, _ ->
+            classNames.forEach {
+                scanner.scan(it, classBytes(it))
+                scanOnly += scanner.isScanOnly(it)
+            }
+            classNames.size
+        }
+
+        assertEquals(listOf(true), scanOnly)
+        assertFalse(scanner.isScanOnly("$fixture/Class2"))
+        assertFalse(scanner.isScanOnly("$fixture/Class3"))
+    }
+
+    @Test
+    fun `given classes retransformed for scanning, class of the same name loaded by another thread must not be scan only`() {
+        val scanner = LoadedClassScanner(listOf(fixture), 50, 60_000) {}
+        var scanOnlyOnRetransformingThread = false
+        var scanOnlyOnLoadingThread = true
+
+        scanner.scanLoadedClasses(setOf("$fixture/Class2")) { classNames, _ ->
+            thread { scanOnlyOnLoadingThread = scanner.isScanOnly("$fixture/Class2") }.join()
+            scanOnlyOnRetransformingThread = scanner.isScanOnly("$fixture/Class2")
+            classNames.size
+        }
+
+        assertTrue(scanOnlyOnRetransformingThread)
+        assertFalse(scanOnlyOnLoadingThread)
+    }
+
+    private fun classBytes(name: String) = javaClass.classLoader.getResourceAsStream("$name.class")!!.readBytes()
+
+}
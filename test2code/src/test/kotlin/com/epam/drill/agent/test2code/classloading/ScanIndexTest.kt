@@ -0,0 +1,183 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.nio.file.Files
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import com.epam.drill.agent.common.classloading.ClassSource
+import com.epam.drill.agent.common.classloading.EntitySource
+import com.epam.drill.agent.test2code.common.api.AstMethod
+
+class ScanIndexTest {
+
+    private val fixture = "com/example/fixture/classloading"
+    private val dir: File = Files.createTempDirectory("scan-index").toFile()
+    private val jar = dir.resolve("app.jar").apply {
+        writeBytes(archiveOf("Class2", "Class3", "sub/Class1"))
+    }
+
+    @AfterTest
+    fun deleteDir() {
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun `given scanned and parsed archive, next scan must take its classes from the index`() {
+        val firstScan = scan(ScanIndex.open(dir.resolve("index"), "key")!!)
+        val secondScan = scan(ScanIndex.open(dir.resolve("index"), "key")!!)
+
+        assertTrue(firstScan.none { it is ParsedClassSource })
+        assertEquals(firstScan.map(EntitySource::entityName), secondScan.map(EntitySource::entityName))
+        secondScan.forEach {
+            assertTrue(it is ParsedClassSource)
+            assertEquals(listOf(methodOf(it.entityName())), (it as ParsedClassSource).methods)
+        }
+    }
+
+    @Test
+    fun `given changed archive, index must not return its classes`() {
+        val index = ScanIndex.open(dir.resolve("index"), "key")!!
+        scan(index)
+        jar.writeBytes(archiveOf("Class2"))
+        jar.setLastModified(jar.lastModified() + 2000)
+
+        assertNull(index.get(ArchiveFingerprint.of(jar)))
+    }
+
+    @Test
+    fun `given archive with not parsed classes, index must not store it`() {
+        val index = ScanIndex.open(dir.resolve("index"), "key")!!
+        index.addScanned(ArchiveFingerprint.of(jar), "$fixture/Class2")
+        index.addScanned(ArchiveFingerprint.of(jar), "$fixture/Class3")
+        index.finishScanned(ArchiveFingerprint.of(jar), true)
+        index.addParsed("$fixture/Class2", listOf(methodOf("$fixture/Class2")))
+        index.close()
+
+        assertNull(index.get(ArchiveFingerprint.of(jar)))
+    }
+
+    @Test
+    fun `given finished archive, index must store it once its classes are parsed`() {
+        val index = ScanIndex.open(dir.resolve("index"), "key")!!
+        index.addScanned(ArchiveFingerprint.of(jar), "$fixture/Class2")
+        index.addParsed("$fixture/Class2", listOf(methodOf("$fixture/Class2")))
+        index.addScanned(ArchiveFingerprint.of(jar), "$fixture/Class3")
+        index.finishScanned(ArchiveFingerprint.of(jar), true)
+        assertNull(index.get(ArchiveFingerprint.of(jar)))
+
+        index.addParsed("$fixture/Class3", listOf(methodOf("$fixture/Class3")))
+        assertEquals(
+            listOf("$fixture/Class2", "$fixture/Class3"),
+            index.get(ArchiveFingerprint.of(jar))?.map(EntitySource::entityName)
+        )
+    }
+
+    @Test
+    fun `given incomplete archive, index must not store it`() {
+        val index = ScanIndex.open(dir.resolve("index"), "key")!!
+        index.addScanned(ArchiveFingerprint.of(jar), "$fixture/Class2")
+        index.finishScanned(ArchiveFingerprint.of(jar), false)
+        index.addParsed("$fixture/Class2", listOf(methodOf("$fixture/Class2")))
+
+        assertNull(index.get(ArchiveFingerprint.of(jar)))
+    }
+
+    @Test
+    fun `given another key, index must not return classes`() {
+        scan(ScanIndex.open(dir.resolve("index"), "key")!!)
+
+        assertNull(ScanIndex.open(dir.resolve("index"), "another-key")!!.get(ArchiveFingerprint.of(jar)))
+    }
+
+    @Test
+    fun `given duplicate classes parsed by several threads, index must keep classes of the archive found first`() {
+        val lib1 = dir.resolve("lib1.jar").apply {
+            writeBytes(archiveOf("Class3" to "Class3", "sub/Class1" to "sub/Class1"))
+        }
+        // the duplicate class has other bytes, so methods parsed from it can be told apart
+        val lib2 = dir.resolve("lib2.jar").apply {
+            writeBytes(archiveOf("Class3" to "Class5", "Class4" to "Class4", "sub/Interface1" to "sub/Interface1"))
+        }
+        val parse: (EntitySource) -> ParsedClassSource = {
+            ParsedClassSource(it.entityName(), listOf(methodOf(it.entityName()).copy(bodyChecksum = "${it.bytes().size}")))
+        }
+
+        repeat(10) { attempt ->
+            val index = ScanIndex.open(dir.resolve("index-$attempt"), "key")!!
+            ClassLoadersScanner(
+                packagePrefixes = listOf(fixture),
+                classesBufferSize = 2,
+                scanClassPaths = listOf(lib1.absolutePath, lib2.absolutePath),
+                enableScanClassLoaders = false,
+                scanThreads = 4,
+                scanIndex = index,
+                parse = parse,
+                transfer = {}
+            ).scanClasses()
+            index.close()
+
+            val class3 = index.get(ArchiveFingerprint.of(lib1))?.find { it.entityName() == "$fixture/Class3" }
+            assertEquals(parse(ClassSource("$fixture/Class3", bytes = classBytes("Class3"))).methods, class3?.methods)
+            assertNull(index.get(ArchiveFingerprint.of(lib2)))
+        }
+    }
+
+    private fun scan(index: ScanIndex) = mutableListOf<EntitySource>().also { scanned ->
+        ClassLoadersScanner(
+            packagePrefixes = listOf(fixture),
+            classesBufferSize = 2,
+            scanClassPaths = listOf(jar.absolutePath),
+            enableScanClassLoaders = false,
+            scanIndex = index,
+            transfer = { classes -> scanned.addAll(classes) }
+        ).scanClasses()
+        scanned.forEach { index.addParsed(it.entityName(), listOf(methodOf(it.entityName()))) }
+        index.close()
+    }
+
+    private fun methodOf(className: String) = AstMethod(
+        classname = className,
+        name = "method",
+        params = "int,java.lang.String",
+        returnType = "void",
+        probesCount = 2,
+        probesStartPos = 0,
+        bodyChecksum = "abc",
+        annotations = mapOf("org.junit.Test" to listOf("value")),
+    )
+
+    private fun archiveOf(vararg classes: String) = archiveOf(*classes.map { it to it }.toTypedArray())
+
+    private fun archiveOf(vararg classes: Pair<String, String>) = ByteArrayOutputStream().also { bytes ->
+        JarOutputStream(bytes).use { jar ->
+            classes.forEach { (name, content) ->
+                jar.putNextEntry(JarEntry("$fixture/$name.class"))
+                jar.write(classBytes(content))
+                jar.closeEntry()
+            }
+        }
+    }.toByteArray()
+
+    private fun classBytes(name: String) = javaClass.classLoader.getResourceAsStream("$fixture/$name.class")!!.readBytes()
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.classloading
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipOutputStream
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class ZipCentralDirectoryTest {
+
+    private val content = ByteArray(10_000) { (it % 7).toByte() }
+
+    @Test
+    fun `given deflated and stored entries, read must return entry data`() {
+        val directory = ZipCentralDirectory(ByteBuffer.wrap(zipOf("a/deflated.bin" to false, "a/stored.bin" to true)))
+
+        assertEquals(listOf("a/", "a/deflated.bin", "a/stored.bin"), directory.entries.map { it.name })
+        assertTrue(directory.entries.first().isDirectory)
+        directory.entries.drop(1).forEach { assertContentEquals(content, directory.read(it)) }
+    }
+
+    @Test
+    fun `given stored entry, slice must share the archive buffer`() {
+        val archive = zipOf("stored.bin" to true)
+        val directory = ZipCentralDirectory(ByteBuffer.wrap(archive))
+
+        val slice = directory.slice(directory.entries.last())
+
+        assertTrue(slice.hasArray())
+        assertTrue(slice.array() === archive)
+        assertEquals(content.size, slice.remaining())
+    }
+
+    @Test
+    fun `given archive prepended with other data, read must return entry data`() {
+        val archive = "#!/bin/bash\nexit 0\n".toByteArray() + zipOf("deflated.bin" to false)
+        val directory = ZipCentralDirectory(ByteBuffer.wrap(archive))
+
+        assertContentEquals(content, directory.read(directory.entries.last()))
+    }
+
+    @Test
+    fun `given not an archive, constructor must fail`() {
+        assertFailsWith<ZipException> { ZipCentralDirectory(ByteBuffer.wrap(content)) }
+    }
+
+    private fun zipOf(vararg entries: Pair<String, Boolean>) = ByteArrayOutputStream().also { bytes ->
+        ZipOutputStream(bytes).use { zip ->
+            zip.putNextEntry(ZipEntry("a/"))
+            zip.closeEntry()
+            entries.forEach { (name, stored) ->
+                zip.putNextEntry(ZipEntry(name).apply {
+                    if (stored) {
+                        method = ZipEntry.STORED
+                        size = content.size.toLong()
+                        crc = CRC32().apply { update(content) }.value
+                    }
+                })
+                zip.write(content)
+                zip.closeEntry()
+            }
+        }
+    }.toByteArray()
+}
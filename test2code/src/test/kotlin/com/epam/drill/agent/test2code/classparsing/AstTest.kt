@@ -196,6 +196,21 @@ class AstTest {
             .assertProbesCount(1)
             .assertProbeStartPosition(14)
     }
+
+    @Test
+    fun `test setting method entry probes`() {
+        val methods = parseAstClass(
+            CheckProbeRanges::class.getFullName(),
+            CheckProbeRanges::class.readBytes(),
+            methodEntryProbesOnly = true
+        )
+
+        methods.forEachIndexed { index, method ->
+            method
+                .assertProbesCount(1)
+                .assertProbeStartPosition(index)
+        }
+    }
 }
 
 internal fun KClass<*>.readBytes(): ByteArray = java.getResourceAsStream(
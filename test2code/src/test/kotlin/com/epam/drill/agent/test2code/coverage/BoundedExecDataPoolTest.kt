@@ -0,0 +1,107 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.jacoco.AgentProbes
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class BoundedExecDataPoolTest {
+
+    @Test
+    fun `exec data released with the same context must be merged`() {
+        val pool = BoundedExecDataPool()
+        val context = ContextKey("session", "test")
+
+        pool.release(context, execData(context, 100L, true, false))
+        pool.release(context, execData(context, 100L, false, true))
+        pool.release(context, execData(context, 200L, true))
+        val released = pool.pollReleased().toList()
+
+        assertEquals(1, released.size)
+        assertTrue(released.single().getValue(100L).probes.values.all { it })
+        assertTrue(released.single().containsKey(200L))
+        assertEquals(2L, pool.metrics().merged)
+    }
+
+    @Test
+    fun `given drop oldest policy, the oldest exec data must be dropped on overflow`() {
+        val pool = BoundedExecDataPool(maxReleasedCount = RELEASED_SHARDS_COUNT, overflowPolicy = OverflowPolicy.DROP_OLDEST)
+        val contexts = (1..200).map { ContextKey("session", "test-$it") }
+
+        contexts.forEach { pool.release(it, execData(it, 100L, true)) }
+        val released = pool.pollReleased().toList()
+
+        assertTrue(released.size < contexts.size)
+        assertEquals(contexts.size - released.size, pool.metrics().dropped.toInt())
+    }
+
+    @Test
+    fun `given merge into ambient policy, overflowed exec data must be merged into ambient context`() {
+        val pool = BoundedExecDataPool(maxReleasedCount = RELEASED_SHARDS_COUNT, overflowPolicy = OverflowPolicy.MERGE_INTO_AMBIENT)
+        val contexts = (1..200).map { ContextKey("session", "test-$it") }
+
+        contexts.forEach { pool.release(it, execData(it, 100L, true)) }
+        val released = pool.pollReleased().flatMap { it.values }.toList()
+
+        val ambient = released.filter { it.sessionId == SESSION_CONTEXT_AMBIENT }
+        assertEquals(1, ambient.size)
+        assertEquals(contexts.size - released.size + 1, pool.metrics().mergedIntoAmbient.toInt())
+    }
+
+    @Test
+    fun `polled exec data must free the pool`() {
+        val pool = BoundedExecDataPool()
+        val context = ContextKey("session", "test")
+
+        pool.release(context, execData(context, 100L, true))
+        pool.pollReleased().toList()
+
+        assertEquals(0, pool.metrics().releasedCount)
+        assertEquals(0L, pool.metrics().releasedBytes)
+        assertTrue(pool.pollReleased().none())
+    }
+
+    @Test
+    fun `count limit less than shards count must be rejected`() {
+        assertFailsWith<IllegalArgumentException> { BoundedExecDataPool(maxReleasedCount = RELEASED_SHARDS_COUNT - 1) }
+        assertFailsWith<IllegalArgumentException> {
+            BoundedExecDataPool().configure(1, Long.MAX_VALUE, OverflowPolicy.DROP_OLDEST, 0L)
+        }
+    }
+
+    @Test
+    fun `by default released exec data must not be bounded`() {
+        val pool = BoundedExecDataPool()
+        val contexts = (1..1000).map { ContextKey("session", "test-$it") }
+
+        contexts.forEach { pool.release(it, execData(it, 100L, true)) }
+
+        assertEquals(contexts.size, pool.pollReleased().count())
+        assertEquals(0L, pool.metrics().mergedIntoAmbient + pool.metrics().dropped)
+    }
+
+    private fun execData(context: ContextKey, classId: Long, vararg probes: Boolean) = ExecData().apply {
+        put(classId, ExecDatum(
+            id = classId,
+            probes = AgentProbes(values = booleanArrayOf(*probes)),
+            sessionId = context.sessionId,
+            testId = context.testId
+        ))
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.CopyOnWriteArrayList
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class ChecksumExecutorTest {
+
+    @Test
+    fun `await must return after all tasks submitted before are done`() {
+        val executor = ChecksumExecutor()
+        val done = CopyOnWriteArrayList<Int>()
+        (1..10).forEach { i -> executor.submit { Thread.sleep(5); done.add(i) } }
+
+        assertTrue(executor.await(5000))
+        assertEquals((1..10).toList(), done)
+    }
+
+    @Test
+    fun `failed task must not stop next tasks`() {
+        val executor = ChecksumExecutor()
+        val done = CopyOnWriteArrayList<Int>()
+        executor.submit { throw IllegalStateException("failure") }
+        executor.submit { done.add(1) }
+
+        assertTrue(executor.await(5000))
+        assertEquals(listOf(1), done)
+    }
+
+    @Test
+    fun `await must return false if tasks are not done in time`() {
+        val executor = ChecksumExecutor()
+        val latch = CountDownLatch(1)
+        executor.submit { latch.await() }
+
+        assertFalse(executor.await(10))
+        latch.countDown()
+        assertTrue(executor.await(5000))
+    }
+
+    @Test
+    fun `given full queue, task must be run on the submitting thread`() {
+        val executor = ChecksumExecutor(maxQueueSize = 1)
+        val started = CountDownLatch(1)
+        val latch = CountDownLatch(1)
+        val threads = CopyOnWriteArrayList<Thread>()
+        executor.submit { started.countDown(); latch.await() }
+        started.await()
+        executor.submit { threads.add(Thread.currentThread()) }
+        executor.submit { threads.add(Thread.currentThread()) }
+
+        assertEquals(listOf(Thread.currentThread()), threads)
+        assertFalse(executor.await(10))
+        latch.countDown()
+        assertTrue(executor.await(5000))
+        assertEquals(2, threads.size)
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import java.lang.management.ManagementFactory
+import kotlin.test.Test
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+private const val WARMUP_INVOCATIONS = 200_000
+private const val MEASURED_INVOCATIONS = 1_000_000
+
+class CoverageManagerTest {
+
+    @Test
+    fun `given ambient context, invoke must return the same probes for the class`() {
+        val manager = CoverageManager(ThreadCoverageRecorder(), GlobalCoverageRecorder())
+
+        val probes = manager.invoke(100L, 1, "foo/Bar", 3)
+
+        assertSame(probes, manager.invoke(100L, 1, "foo/Bar", 3))
+    }
+
+    @Test
+    fun `given ambient context, invoke must not allocate in steady state`() {
+        val manager = CoverageManager(ThreadCoverageRecorder(), GlobalCoverageRecorder())
+
+        val allocated = measureAllocatedBytes { manager.invoke(100L, 1, "foo/Bar", 3) }
+
+        assertTrue(allocated < MEASURED_INVOCATIONS, "Allocated $allocated bytes for $MEASURED_INVOCATIONS invocations")
+    }
+
+    @Test
+    fun `given thread context, invoke must not allocate in steady state`() {
+        val manager = CoverageManager(ThreadCoverageRecorder(), GlobalCoverageRecorder())
+        manager.startRecording("session-1", "test-1")
+
+        val allocated = measureAllocatedBytes { manager.invoke(100L, 1, "foo/Bar", 3) }
+        manager.stopRecording("session-1", "test-1")
+
+        assertTrue(allocated < MEASURED_INVOCATIONS, "Allocated $allocated bytes for $MEASURED_INVOCATIONS invocations")
+    }
+
+    @Test
+    fun `given ambient until first test, invoke must return ambient probes until recording is started`() {
+        val globalCoverageRecorder = GlobalCoverageRecorder()
+        val manager = CoverageManager(ThreadCoverageRecorder(), globalCoverageRecorder)
+        manager.configureCoverageMode(CoverageMode.AMBIENT_UNTIL_FIRST_TEST)
+
+        val ambientProbes = manager.invoke(100L, 1, "foo/Bar", 3)
+        manager.startRecording("session-1", "test-1")
+        val testProbes = manager.invoke(100L, 1, "foo/Bar", 3)
+        manager.stopRecording("session-1", "test-1")
+
+        assertSame(globalCoverageRecorder.getContext().execData.getValue(100L).probes, ambientProbes)
+        assertNotSame(ambientProbes, testProbes)
+        assertSame(ambientProbes, manager.invoke(100L, 1, "foo/Bar", 3))
+    }
+
+    @Test
+    fun `given ambient only, invoke must return ambient probes even if recording is started`() {
+        val globalCoverageRecorder = GlobalCoverageRecorder()
+        val manager = CoverageManager(ThreadCoverageRecorder(), globalCoverageRecorder)
+        manager.configureCoverageMode(CoverageMode.AMBIENT_ONLY)
+
+        manager.startRecording("session-1", "test-1")
+        val probes = manager.invoke(100L, 1, "foo/Bar", 3)
+        manager.stopRecording("session-1", "test-1")
+
+        assertSame(globalCoverageRecorder.getContext().execData.getValue(100L).probes, probes)
+    }
+
+    private inline fun measureAllocatedBytes(invocation: () -> Unit): Long {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+        repeat(WARMUP_INVOCATIONS) { invocation() }
+        val before = threadMXBean.getThreadAllocatedBytes(threadId)
+        repeat(MEASURED_INVOCATIONS) { invocation() }
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import kotlinx.serialization.json.Json
+import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.test2code.common.api.ProbesEncoding
+import com.epam.drill.agent.test2code.common.api.toBase64String
+import com.epam.drill.agent.test2code.common.api.toBitSet
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class CoveragePageSerializerTest {
+
+    private val json = Json { encodeDefaults = true }
+
+    @Test
+    fun `coverage page must be serialized as coverage payload`() {
+        val page = coveragePage(booleanArrayOf(true, false, false, true, true))
+
+        assertEquals(
+            """{"groupId":"group","appId":"app","instanceId":"instance","commitSha":null,"buildVersion":"1.0",""" +
+                    """"coverage":[""" +
+                    """{"signature":"foo()V","bodyChecksum":"a1","testId":"test","testSessionId":"session","stringProbes":"100"},""" +
+                    """{"signature":"bar()V","bodyChecksum":"b2","testId":"test","testSessionId":"session","stringProbes":"11"}""" +
+                    """]}""",
+            json.encodeToString(CoveragePageSerializer(ProbesEncoding.BIT_STRING), page)
+        )
+    }
+
+    @Test
+    fun `methods without covered probes must be skipped`() {
+        val page = coveragePage(booleanArrayOf(false, false, false, false, true))
+
+        val serialized = json.encodeToString(CoveragePageSerializer(ProbesEncoding.BIT_STRING), page)
+
+        assertFalse(serialized.contains("foo()V"))
+        assertTrue(serialized.contains("bar()V"))
+    }
+
+    @Test
+    fun `given base64 encoding, method probes must be encoded as base64`() {
+        val page = coveragePage(booleanArrayOf(true, false, false, true, true))
+
+        val serialized = json.encodeToString(CoveragePageSerializer(ProbesEncoding.BASE64), page)
+
+        assertEquals(
+            listOf(
+                booleanArrayOf(true, false, false).toBitSet().toBase64String(),
+                booleanArrayOf(true, true).toBitSet().toBase64String()
+            ),
+            Regex(""""stringProbes":"([^"]*)"""").findAll(serialized).map { it.groupValues[1] }.toList()
+        )
+    }
+
+    private fun coveragePage(probes: BooleanArray) = CoveragePage(
+        groupId = "group",
+        appId = "app",
+        instanceId = "instance",
+        commitSha = null,
+        buildVersion = "1.0",
+        execData = listOf(
+            ExecDatum(
+                id = 100L,
+                probes = AgentProbes(values = probes),
+                sessionId = "session",
+                testId = "test"
+            )
+        ),
+        classMethodsMetadata = mapOf(
+            100L to linkedMapOf(
+                "foo()V" to ClassMethodMetadata(probesStartPos = 0, probesCount = 3, bodyChecksum = "a1"),
+                "bar()V" to ClassMethodMetadata(probesStartPos = 3, probesCount = 2, bodyChecksum = "b2"),
+            )
+        )
+    )
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+import kotlinx.serialization.SerializationStrategy
+import com.epam.drill.agent.common.transport.AgentMessageDestination
+import com.epam.drill.agent.common.transport.AgentMessageSender
+import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.test2code.common.transport.DeltaCoveragePayload
+
+class CoverageSenderTest {
+
+    @Test
+    fun `given checksums calculated slower than sending interval, coverage must be sent once they are calculated`() {
+        val classMethodsMetadata = ConcurrentHashMap<Long, ClassMethodsMetadata>()
+        val checksumExecutor = ChecksumExecutor()
+        val checksumsCalculated = CountDownLatch(1)
+        checksumExecutor.submit {
+            checksumsCalculated.await()
+            classMethodsMetadata[1L] = mapOf("foo/Bar:baz:():void" to ClassMethodMetadata(0, 2, "abc"))
+        }
+        val released = CopyOnWriteArrayList(listOf(execDatumOf(1L, true, false)))
+        val sentPages = CopyOnWriteArrayList<CoveragePage>()
+        val coverageSender = IntervalCoverageSender(
+            groupId = "group",
+            appId = "app",
+            commitSha = null,
+            buildVersion = "1.0",
+            instanceId = "instance",
+            intervalMs = 20,
+            pageSize = 10,
+            sender = PageCollectingSender(sentPages),
+            collectReleasedProbes = { released.toList().also { released.clear() }.asSequence() },
+            classMethodsMetadata = classMethodsMetadata,
+            awaitClassMethodsMetadata = checksumExecutor::await
+        )
+
+        coverageSender.startSendingCoverage()
+        Thread.sleep(200)
+        assertTrue(sentPages.isEmpty())
+        checksumsCalculated.countDown()
+        coverageSender.stopSendingCoverage(5000)
+
+        assertEquals(listOf(1L), sentPages.flatMap { page -> page.execData.map(ExecDatum::id) })
+    }
+
+    @Test
+    fun `given undelivered delta coverage, its probes must be sent again`() {
+        val classMethodsMetadata = ConcurrentHashMap<Long, ClassMethodsMetadata>()
+        classMethodsMetadata[1L] = mapOf("foo/Bar:baz:():void" to ClassMethodMetadata(0, 2, "abc"))
+        val datum = execDatumOf(1L, true, false)
+        val sentPayloads = CopyOnWriteArrayList<DeltaCoveragePayload>()
+        var delivered = false
+        val coverageSender = IntervalCoverageSender(
+            groupId = "group",
+            appId = "app",
+            commitSha = null,
+            buildVersion = "1.0",
+            instanceId = "instance",
+            intervalMs = 20,
+            pageSize = 10,
+            sender = object : AgentMessageSender {
+                override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) {
+                    if (!delivered) throw IllegalStateException("not delivered")
+                    if (message is DeltaCoveragePayload) sentPayloads.add(message)
+                }
+            },
+            collectUnreleasedProbes = { sequenceOf(datum) },
+            classMethodsMetadata = classMethodsMetadata,
+            sentProbes = SentProbes()
+        )
+
+        runCatching { coverageSender.stopSendingCoverage(0) }
+        delivered = true
+        coverageSender.stopSendingCoverage(0)
+
+        assertEquals(listOf(listOf(0)), sentPayloads.map { payload -> payload.coverage.flatMap { it.newProbes.toList() } })
+    }
+
+    private fun execDatumOf(classId: Long, vararg probes: Boolean) = ExecDatum(
+        id = classId,
+        sessionId = SESSION_CONTEXT_AMBIENT,
+        probes = AgentProbes(initialSize = probes.size, values = booleanArrayOf(*probes)),
+        testId = TEST_CONTEXT_NONE,
+    )
+
+    private class PageCollectingSender(private val pages: MutableList<CoveragePage>) : AgentMessageSender {
+        override fun <T> send(destination: AgentMessageDestination, message: T, serializer: SerializationStrategy<T>) {
+            if (message is CoveragePage) pages.add(message)
+        }
+    }
+}
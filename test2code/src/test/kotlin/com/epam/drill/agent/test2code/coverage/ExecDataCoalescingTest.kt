@@ -0,0 +1,58 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.jacoco.AgentProbes
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertSame
+
+class ExecDataCoalescingTest {
+
+    @Test
+    fun `exec data of the same test and class must be merged`() {
+        val first = execDatum("test-1", 100L, true, false, false)
+        val second = execDatum("test-1", 100L, false, true, false)
+
+        val coalesced = sequenceOf(first, second).coalesce().toList()
+
+        assertEquals(1, coalesced.size)
+        assertContentEquals(booleanArrayOf(true, true, false), coalesced.single().probes.values)
+        assertContentEquals(booleanArrayOf(true, false, false), first.probes.values)
+    }
+
+    @Test
+    fun `exec data of different tests or classes must not be merged`() {
+        val first = execDatum("test-1", 100L, true)
+        val second = execDatum("test-2", 100L, true)
+        val third = execDatum("test-1", 200L, true)
+
+        val coalesced = sequenceOf(first, second, third).coalesce().toList()
+
+        assertEquals(3, coalesced.size)
+        assertSame(first, coalesced[0])
+        assertSame(second, coalesced[1])
+        assertSame(third, coalesced[2])
+    }
+
+    private fun execDatum(testId: String, classId: Long, vararg probes: Boolean) = ExecDatum(
+        id = classId,
+        probes = AgentProbes(values = booleanArrayOf(*probes)),
+        sessionId = "session",
+        testId = testId
+    )
+}
@@ -15,6 +15,7 @@
  */
 package com.epam.drill.agent.test2code.coverage
 
+import kotlin.concurrent.thread
 import kotlin.test.Test
 import kotlin.test.assertEquals
 import kotlin.test.assertTrue
@@ -86,11 +87,60 @@ class GlobalCoverageRecorderTest {
         assertTrue(result.toList().isEmpty())
     }
 
+    @Test
+    fun `if probes have been hit since last poll, pollRecorded must return hit exec data`() {
+        val recorder = GlobalCoverageRecorder()
+        recorder.getContext().putProbes(100L, true, false)
+        recorder.getContext().putProbes(200L, true, false)
+
+        recorder.pollRecorded()
+        recorder.getContext().execData.getValue(200L).probes.set(1)
+        val result = recorder.pollRecorded()
+
+        assertEquals(1, result.toList().size)
+        assertTrue(result.any { it.probesEquals(200L, true, true) })
+    }
+
+    @Test
+    fun `if probes have been hit again since last poll, pollRecorded must return empty`() {
+        val recorder = GlobalCoverageRecorder()
+        recorder.getContext().putProbes(100L, true, false)
+
+        recorder.pollRecorded()
+        recorder.getContext().execData.getValue(100L).probes.set(0)
+        val result = recorder.pollRecorded()
+
+        assertTrue(result.toList().isEmpty())
+    }
+
+    @Test
+    fun `given probes hit while polling, pollRecorded must not lose hits`() {
+        repeat(10) {
+            val recorder = GlobalCoverageRecorder()
+            val size = 256
+            (1L..50L).forEach { recorder.getContext().putProbes(it, *BooleanArray(size)) }
+            val probes = recorder.getContext().execData.values.map(ExecDatum::probes)
+            val polled = mutableMapOf<Long, AgentProbes>()
+
+            val hitting = thread { (0 until size).forEach { index -> probes.forEach { it.set(index) } } }
+            while (hitting.isAlive) recorder.pollRecorded().forEach { polled[it.id] = it.probes }
+            hitting.join()
+            recorder.pollRecorded().forEach { polled[it.id] = it.probes }
+
+            assertEquals(50, polled.size)
+            polled.forEach { (classId, probes) -> assertTrue(probes.values.all { it }, "class $classId") }
+        }
+    }
+
     private fun ContextCoverage.putProbes(classId: Long, vararg probes: Boolean) {
         execData[classId] = ExecDatum(
             id = classId,
             sessionId = SESSION_CONTEXT_AMBIENT,
-            probes = AgentProbes(initialSize = probes.size, values = booleanArrayOf(*probes)),
+            probes = AgentProbes(
+                values = booleanArrayOf(*probes),
+                classId = classId,
+                tracker = execData.dirtyClassTracker
+            ),
             testId = TEST_CONTEXT_NONE,
         )
     }
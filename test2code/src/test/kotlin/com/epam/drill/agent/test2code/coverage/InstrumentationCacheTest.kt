@@ -0,0 +1,168 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import java.io.File
+import java.nio.file.Files
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+import org.jacoco.core.internal.data.CRC64
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.jacoco.PackedAgentProbes
+
+class InstrumentationCacheTest {
+
+    private val dir: File = Files.createTempDirectory("instrumentation-cache").toFile()
+
+    @AfterTest
+    fun deleteDir() {
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun `classes stored in cache must be available after reopening`() {
+        val metadata = mapOf("foo/Bar:baz:int:void" to ClassMethodMetadata(0, 3, "abc"))
+        InstrumentationCache.open(dir, "key")!!.run {
+            put(100L, CachedClass(byteArrayOf(1, 2, 3), 1, metadata))
+            assertNull(get(100L))
+            close()
+        }
+
+        val cachedClass = InstrumentationCache.open(dir, "key")!!.run { get(100L).also { close() } }
+
+        assertNotNull(cachedClass)
+        assertContentEquals(byteArrayOf(1, 2, 3), cachedClass!!.bytes)
+        assertEquals(1, cachedClass.classNumberOffset)
+        assertEquals(metadata, cachedClass.methodsMetadata)
+    }
+
+    @Test
+    fun `classes stored with another key must not be available`() {
+        InstrumentationCache.open(dir, "key")!!.run {
+            put(100L, CachedClass(byteArrayOf(1, 2, 3), 1, emptyMap()))
+            close()
+        }
+
+        val cachedClass = InstrumentationCache.open(dir, "another-key")!!.run { get(100L).also { close() } }
+
+        assertNull(cachedClass)
+    }
+
+    @Test
+    fun `incomplete entry must be ignored`() {
+        val keyDir = InstrumentationCache.open(dir, "key")!!.run {
+            put(100L, CachedClass(byteArrayOf(1, 2, 3), 1, emptyMap()))
+            put(200L, CachedClass(byteArrayOf(4, 5, 6), 1, emptyMap()))
+            close()
+            dir.listFiles()!!.single()
+        }
+        keyDir.resolve("classes.dat").run { writeBytes(readBytes().copyOf(length().toInt() - 1)) }
+
+        InstrumentationCache.open(dir, "key")!!.run {
+            assertNotNull(get(100L))
+            assertNull(get(200L))
+            close()
+        }
+    }
+
+    @Test
+    fun `given full cache, it must stop storing classes and be rotated on reopening`() {
+        InstrumentationCache.open(dir, "key", maxSize = 48)!!.run {
+            put(100L, CachedClass(ByteArray(20), 1, emptyMap()))
+            close()
+        }
+        InstrumentationCache.open(dir, "key", maxSize = 48)!!.run {
+            assertNotNull(get(100L))
+            put(200L, CachedClass(ByteArray(20), 1, emptyMap()))
+            close()
+        }
+        InstrumentationCache.open(dir, "key", maxSize = 48)!!.run {
+            put(200L, CachedClass(ByteArray(20), 1, emptyMap()))
+            close()
+        }
+
+        InstrumentationCache.open(dir, "key", maxSize = 48)!!.run {
+            assertNull(get(100L))
+            assertNotNull(get(200L))
+            close()
+        }
+    }
+
+    @Test
+    fun `stale directories of other keys must be deleted on opening`() {
+        val staleTime = System.currentTimeMillis() - 30L * 24 * 60 * 60 * 1000
+        InstrumentationCache.open(dir, "old-key")!!.close()
+        val oldKeyDir = dir.listFiles()!!.single().apply { setLastModified(staleTime) }
+        val otherDir = dir.resolve("other").apply { mkdirs() }.apply { setLastModified(staleTime) }
+
+        InstrumentationCache.open(dir, "key")!!.close()
+
+        assertFalse(oldKeyDir.exists())
+        assertTrue(otherDir.exists())
+        assertEquals(2, dir.listFiles()!!.size)
+    }
+
+    @Test
+    fun `given instrumenter with cache, cached class must get its own class number`() {
+        val className = "com/epam/drill/agent/test2code/coverage/BoundedExecDataPool"
+        val bytes = ClassLoader.getSystemResourceAsStream("$className.class")!!.readBytes()
+        val instrumented = InstrumentationCache.open(dir, "key")!!.run {
+            DrillInstrumenter(StubProbesProxy(), cache = this).instrument(className, bytes).also { close() }
+        }
+        val cached = InstrumentationCache.open(dir, "key")!!.run {
+            assertNotNull(get(CRC64.classId(bytes)))
+            DrillInstrumenter(StubProbesProxy(), cache = this).instrument(className, bytes).also { close() }
+        }
+
+        val instrumentedConstants = assertNotNull(instrumented).integerConstants()
+        val cachedConstants = assertNotNull(cached).integerConstants()
+        assertFalse(CLASS_NUMBER_PLACEHOLDER in instrumentedConstants)
+        assertFalse(CLASS_NUMBER_PLACEHOLDER in cachedConstants)
+        assertEquals(1, instrumentedConstants.zip(cachedConstants).filter { (a, b) -> a != b }.toSet().size)
+    }
+
+    private fun ByteArray.integerConstants(): List<Int> {
+        val constants = mutableListOf<Int>()
+        ClassReader(this).accept(object : ClassVisitor(Opcodes.ASM9) {
+            override fun visitMethod(
+                access: Int, name: String?, descriptor: String?, signature: String?, exceptions: Array<out String>?
+            ): MethodVisitor = object : MethodVisitor(Opcodes.ASM9) {
+                override fun visitLdcInsn(value: Any?) {
+                    if (value is Int) constants += value
+                }
+            }
+        }, 0)
+        return constants
+    }
+
+    private class StubProbesProxy : IProbesProxy {
+        override fun invoke(id: ClassId, num: Int, name: String, probeCount: Int) = AgentProbes(probeCount)
+
+        override fun invokePacked(id: ClassId, num: Int, name: String, probeCount: Int) = PackedAgentProbes(probeCount)
+
+        override fun addClassMethodsMetadata(classId: Long, methodsMetadata: ClassMethodsMetadata) {}
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.common.module.Instrumenter
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+
+class LazyInstrumentationTest {
+
+    private val instrumentedBytes = byteArrayOf(1)
+    private val instrumenter = object : Instrumenter {
+        override fun instrument(className: String, initialBytes: ByteArray) = instrumentedBytes
+    }
+
+    @Test
+    fun `given not activated, instrument must skip classes`() {
+        val lazyInstrumentation = LazyInstrumentation(instrumenter) { _, _ -> 0 }
+
+        assertNull(lazyInstrumentation.instrument("foo/Bar", byteArrayOf()))
+    }
+
+    @Test
+    fun `given activated, loaded classes must be retransformed and new ones instrumented`() {
+        val retransformed = mutableListOf<Set<String>>()
+        val lazyInstrumentation = LazyInstrumentation(instrumenter) { classNames, _ ->
+            classNames.size.also { retransformed += classNames }
+        }
+        lazyInstrumentation.instrument("foo/Bar", byteArrayOf())
+        lazyInstrumentation.instrument("foo/Baz", byteArrayOf())
+
+        lazyInstrumentation.activate()!!.join()
+
+        assertEquals(listOf(setOf("foo/Bar", "foo/Baz")), retransformed)
+        assertSame(instrumentedBytes, lazyInstrumentation.instrument("foo/Bar", byteArrayOf()))
+        assertSame(instrumentedBytes, lazyInstrumentation.instrument("foo/Qux", byteArrayOf()))
+    }
+
+    @Test
+    fun `given already activated, activate must not retransform classes again`() {
+        var retransformations = 0
+        val lazyInstrumentation = LazyInstrumentation(instrumenter) { _, _ -> 0.also { retransformations++ } }
+
+        lazyInstrumentation.activate()!!.join()
+
+        assertNull(lazyInstrumentation.activate())
+        assertEquals(1, retransformations)
+    }
+}
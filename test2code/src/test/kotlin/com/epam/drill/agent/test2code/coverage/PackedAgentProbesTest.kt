@@ -0,0 +1,95 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.jacoco.PackedAgentProbes
+import kotlin.test.*
+
+class PackedAgentProbesTest {
+
+    @Test
+    fun `set must mark only the given probe across word boundaries`() {
+        val probes = PackedAgentProbes(130)
+
+        probes.set(0)
+        probes.set(63)
+        probes.set(64)
+        probes.set(129)
+
+        assertEquals(listOf(0, 63, 64, 129), (0 until probes.size).filter { probes.get(it) })
+        assertEquals(3, probes.words.length())
+    }
+
+    @Test
+    fun `slice must return probes of the range`() {
+        val probes = PackedAgentProbes(70)
+        probes.set(2)
+        probes.set(65)
+
+        val slice = probes.slice(60, 10)
+
+        assertContentEquals(BooleanArray(10) { it == 5 }, BooleanArray(slice.length) { slice[it] })
+    }
+
+    @Test
+    fun `containCovered in range must check only probes of the range`() {
+        val probes = PackedAgentProbes(200)
+        probes.set(63)
+        probes.set(128)
+
+        assertTrue(probes.containCovered(60, 64))
+        assertFalse(probes.containCovered(64, 128))
+        assertTrue(probes.containCovered(64, 129))
+        assertFalse(probes.containCovered(0, 63))
+        assertFalse(probes.containCovered(129, 200))
+        assertFalse(probes.slice(100, 50).isEmpty())
+    }
+
+    @Test
+    fun `copy must not be affected by further hits`() {
+        val probes = PackedAgentProbes(10)
+        probes.set(1)
+
+        val copy = probes.copy()
+        probes.set(2)
+
+        assertTrue(copy.get(1))
+        assertFalse(copy.get(2))
+        assertNotEquals(copy, probes)
+    }
+
+    @Test
+    fun `reset must clear all probes`() {
+        val probes = PackedAgentProbes(100)
+        probes.set(99)
+        assertTrue(probes.containCovered())
+
+        probes.reset()
+
+        assertFalse(probes.containCovered())
+    }
+
+    @Test
+    fun `given packed storage, coverage manager must return packed probes`() {
+        val manager = CoverageManager(ThreadCoverageRecorder(), GlobalCoverageRecorder())
+
+        val probes = manager.invokePacked(100L, 1, "foo/Bar", 3)
+        probes.set(2)
+
+        assertSame(probes, manager.invokePacked(100L, 1, "foo/Bar", 3))
+        assertEquals(1, manager.pollRecorded().count())
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.test2code.common.api.toProbeIndices
+import com.epam.drill.agent.test2code.common.api.toRunsString
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+
+class SentProbesTest {
+
+    @Test
+    fun `pollNew must return covered probes of the method relative to its start`() {
+        val sentProbes = SentProbes()
+        val datum = execDatum(100L, false, true, true, false, true)
+
+        val newProbes = sentProbes.pollNew(datum, 1, 3)
+
+        assertContentEquals(intArrayOf(0, 1), newProbes)
+    }
+
+    @Test
+    fun `pollNew must not return probes that have already been sent`() {
+        val sentProbes = SentProbes()
+        val datum = execDatum(100L, true, false, false)
+
+        sentProbes.pollNew(datum, 0, 3)
+        datum.probes.set(2)
+        val newProbes = sentProbes.pollNew(datum, 0, 3)
+
+        assertContentEquals(intArrayOf(2), newProbes)
+    }
+
+    @Test
+    fun `given evicted class, pollNew must return all covered probes again`() {
+        val sentProbes = SentProbes(maxEntries = 1)
+        val datum = execDatum(100L, true, true)
+
+        sentProbes.pollNew(datum, 0, 2)
+        sentProbes.pollNew(execDatum(200L, true), 0, 1)
+        val newProbes = sentProbes.pollNew(datum, 0, 2)
+
+        assertContentEquals(intArrayOf(0, 1), newProbes)
+    }
+
+    @Test
+    fun `given rolled back probes, pollNew must return them again`() {
+        val sentProbes = SentProbes()
+        val datum = execDatum(100L, false, true, true)
+
+        val sent = sentProbes.pollNew(datum, 1, 2)
+        sentProbes.rollback(datum, 1, sent)
+        val newProbes = sentProbes.pollNew(datum, 0, 3)
+
+        assertContentEquals(intArrayOf(1, 2), newProbes)
+    }
+
+    @Test
+    fun `probe indices must be encoded as runs`() {
+        val indices = intArrayOf(0, 1, 2, 5, 7, 8)
+
+        assertEquals("0-2,5,7-8", indices.toRunsString())
+        assertContentEquals(indices, indices.toRunsString().toProbeIndices())
+        assertContentEquals(IntArray(0), "".toProbeIndices())
+    }
+
+    private fun execDatum(classId: Long, vararg probes: Boolean) = ExecDatum(
+        id = classId,
+        sessionId = SESSION_CONTEXT_AMBIENT,
+        probes = AgentProbes(initialSize = probes.size, values = booleanArrayOf(*probes)),
+        testId = TEST_CONTEXT_NONE,
+    )
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.jacoco.PackedAgentProbes
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.junit.Assume.assumeTrue
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNotNull
+import kotlin.test.assertTrue
+
+private const val WARMUP_ITERATIONS = 5
+private const val MEASURED_ROUNDS = 5
+private const val MEASURED_ITERATIONS = 20
+
+private val instrumentedClasses = listOf(
+    "java/lang/String",
+    "java/util/HashMap",
+    "java/util/ArrayList",
+    "java/util/concurrent/ConcurrentHashMap",
+    "java/util/regex/Pattern",
+    "java/text/SimpleDateFormat",
+    "java/math/BigDecimal",
+    "com/epam/drill/agent/test2code/coverage/CoverageManager",
+    "com/epam/drill/agent/test2code/coverage/BoundedExecDataPool",
+)
+
+class SinglePassInstrumentationTest {
+
+    @Test
+    fun `single-pass instrumentation must produce the same metadata and probe count as two-pass one`() {
+        instrumentedClasses.forEach { className ->
+            val bytes = readClassBytes(className)
+            val singlePassProxy = MetadataRecordingProxy()
+            val twoPassProxy = MetadataRecordingProxy()
+
+            val singlePassBytes = DrillInstrumenter(singlePassProxy, singlePass = true).instrument(className, bytes)
+            val twoPassBytes = DrillInstrumenter(twoPassProxy, singlePass = false).instrument(className, bytes)
+
+            assertNotNull(twoPassBytes, className)
+            assertNotNull(singlePassBytes, className)
+            assertEquals(twoPassProxy.metadata, singlePassProxy.metadata, className)
+            assertFalse(PROBE_COUNT_PLACEHOLDER in singlePassBytes!!.integerConstants(), className)
+        }
+    }
+
+    /**
+     * Benchmark of startup instrumentation, it's run only with the `drill.benchmarks` system property set to true.
+     * Both paths calculate method body checksums by a separate parse of the class,
+     * so the difference is made by the probe counting pass only.
+     */
+    @Test
+    fun `single-pass instrumentation must take less time than two-pass one`() {
+        assumeTrue("Benchmarks are run with -Ddrill.benchmarks=true", java.lang.Boolean.getBoolean("drill.benchmarks"))
+        val classes = instrumentedClasses.associateWith(::readClassBytes)
+        val singlePass = DrillInstrumenter(MetadataRecordingProxy(), singlePass = true)
+        val twoPass = DrillInstrumenter(MetadataRecordingProxy(), singlePass = false)
+        repeat(WARMUP_ITERATIONS) {
+            instrumentAll(singlePass, classes)
+            instrumentAll(twoPass, classes)
+        }
+
+        // rounds of both paths are interleaved and the fastest ones are compared to reduce the noise
+        var singlePassNanos = Long.MAX_VALUE
+        var twoPassNanos = Long.MAX_VALUE
+        repeat(MEASURED_ROUNDS) {
+            twoPassNanos = minOf(twoPassNanos, measureNanos { instrumentAll(twoPass, classes) })
+            singlePassNanos = minOf(singlePassNanos, measureNanos { instrumentAll(singlePass, classes) })
+        }
+
+        println(
+            "Instrumentation of ${classes.size} classes x $MEASURED_ITERATIONS: " +
+                    "two-pass ${twoPassNanos / 1_000_000} ms, single-pass ${singlePassNanos / 1_000_000} ms"
+        )
+        assertTrue(singlePassNanos < twoPassNanos, "single-pass $singlePassNanos ns, two-pass $twoPassNanos ns")
+    }
+
+    private fun instrumentAll(instrumenter: DrillInstrumenter, classes: Map<String, ByteArray>) =
+        classes.forEach { (name, bytes) -> instrumenter.instrument(name, bytes) }
+
+    private inline fun measureNanos(block: () -> Unit): Long {
+        val start = System.nanoTime()
+        repeat(MEASURED_ITERATIONS) { block() }
+        return System.nanoTime() - start
+    }
+
+    private fun readClassBytes(className: String): ByteArray =
+        ClassLoader.getSystemResourceAsStream("$className.class")!!.readBytes()
+
+    private fun ByteArray.integerConstants(): Set<Int> {
+        val constants = mutableSetOf<Int>()
+        ClassReader(this).accept(object : ClassVisitor(Opcodes.ASM9) {
+            override fun visitMethod(
+                access: Int, name: String?, descriptor: String?, signature: String?, exceptions: Array<out String>?
+            ): MethodVisitor = object : MethodVisitor(Opcodes.ASM9) {
+                override fun visitLdcInsn(value: Any?) {
+                    if (value is Int) constants += value
+                }
+            }
+        }, 0)
+        return constants
+    }
+
+    private class MetadataRecordingProxy : IProbesProxy {
+        val metadata = mutableMapOf<Long, ClassMethodsMetadata>()
+
+        override fun invoke(id: ClassId, num: Int, name: String, probeCount: Int): AgentProbes =
+            AgentProbes(probeCount)
+
+        override fun invokePacked(id: ClassId, num: Int, name: String, probeCount: Int): PackedAgentProbes =
+            PackedAgentProbes(probeCount)
+
+        override fun addClassMethodsMetadata(classId: Long, methodsMetadata: ClassMethodsMetadata) {
+            metadata[classId] = methodsMetadata
+        }
+    }
+}
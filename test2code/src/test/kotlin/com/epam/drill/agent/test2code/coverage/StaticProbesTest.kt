@@ -0,0 +1,119 @@
+/**
+ * Copyright 2020 - 2022 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.drill.agent.test2code.coverage
+
+import com.epam.drill.agent.jacoco.AgentProbes
+import com.epam.drill.agent.jacoco.PackedAgentProbes
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class StaticProbesTest {
+
+    @BeforeTest
+    fun reset() {
+        StaticProbesProxy.invocations = 0
+        StaticProbesProxy.probes.clear()
+    }
+
+    @Test
+    fun `given static probes, probes proxy must be called once per class`() {
+        val target = loadInstrumented(DrillInstrumenter(StaticProbesProxy, staticProbes = true))
+
+        assertEquals(1, target(1))
+        assertEquals(-1, target(-1))
+        assertEquals(1, target(2))
+
+        assertEquals(1, StaticProbesProxy.invocations)
+        assertTrue(StaticProbesProxy.probes.single().containCovered())
+    }
+
+    @Test
+    fun `given static probes and two-pass instrumentation, probes proxy must be called once per class`() {
+        val target = loadInstrumented(DrillInstrumenter(StaticProbesProxy, singlePass = false, staticProbes = true))
+
+        assertEquals(1, target(1))
+        assertEquals(1, target(1))
+
+        assertEquals(1, StaticProbesProxy.invocations)
+    }
+
+    @Test
+    fun `given static packed probes, probes proxy must be called once per class`() {
+        val target = loadInstrumented(DrillInstrumenter(StaticProbesProxy, packedProbes = true, staticProbes = true))
+
+        assertEquals(-1, target(0))
+        assertEquals(-1, target(0))
+
+        assertEquals(1, StaticProbesProxy.invocations)
+        assertTrue(StaticProbesProxy.probes.single().containCovered())
+    }
+
+    @Test
+    fun `given proxy probes, probes proxy must be called on each method call`() {
+        val target = loadInstrumented(DrillInstrumenter(StaticProbesProxy))
+
+        target(1)
+        target(1)
+
+        // the constructor and two calls of the method
+        assertEquals(3, StaticProbesProxy.invocations)
+    }
+
+    @Test
+    fun `given method entry probes, a single probe must be set per called method`() {
+        val target = loadInstrumented(DrillInstrumenter(StaticProbesProxy, methodEntryProbesOnly = true))
+
+        target(1)
+        target(-1)
+
+        StaticProbesProxy.probes.forEach { assertEquals(2, it.values.size) }
+        assertEquals(1, StaticProbesProxy.probes.last().values.count { it })
+    }
+
+    private fun loadInstrumented(instrumenter: DrillInstrumenter): (Int) -> Int {
+        val className = StaticProbesTarget::class.java.name
+        val bytes = javaClass.classLoader.getResourceAsStream("${className.replace('.', '/')}.class")!!.readBytes()
+        val instrumentedBytes = instrumenter.instrument(className.replace('.', '/'), bytes)!!
+        val loader = object : ClassLoader(javaClass.classLoader) {
+            override fun loadClass(name: String, resolve: Boolean): Class<*> =
+                if (name == className) findLoadedClass(name) ?: defineClass(name, instrumentedBytes, 0, instrumentedBytes.size)
+                else super.loadClass(name, resolve)
+        }
+        val targetClass = loader.loadClass(className)
+        val target = targetClass.getDeclaredConstructor().newInstance()
+        val method = targetClass.getMethod("check", Int::class.javaPrimitiveType)
+        return { x -> method.invoke(target, x) as Int }
+    }
+}
+
+class StaticProbesTarget {
+    fun check(x: Int): Int = if (x > 0) 1 else -1
+}
+
+object StaticProbesProxy : IProbesProxy {
+    var invocations = 0
+    val probes = mutableListOf<AgentProbes>()
+
+    override fun invoke(id: ClassId, num: Int, name: String, probeCount: Int): AgentProbes =
+        AgentProbes(probeCount).also { invocations++; probes += it }
+
+    override fun invokePacked(id: ClassId, num: Int, name: String, probeCount: Int): PackedAgentProbes =
+        PackedAgentProbes(probeCount).also { invocations++; probes += it }
+
+    override fun addClassMethodsMetadata(classId: Long, methodsMetadata: ClassMethodsMetadata) {}
+}